@@ -11,11 +11,16 @@ import org.bukkit.map.MapView;
 import com.fullwall.maps.applications.ApplicationFactory;
 import com.fullwall.maps.applications.ApplicationProvider;
 import com.fullwall.maps.applications.included.SettingsApp;
+import com.fullwall.maps.os.AnimationWheel;
 import com.fullwall.maps.os.ForwardingMapRenderer;
+import com.fullwall.maps.os.FrameGovernor;
 import com.fullwall.maps.os.OperatingSystem;
+import com.fullwall.maps.os.TileLayout;
 import com.google.common.collect.Maps;
 
 public class MapController {
+    private final AnimationWheel animations = new AnimationWheel();
+    private final FrameGovernor governor = new FrameGovernor();
     private final Map<String, ApplicationProvider> providers = Maps.newHashMap();
     private final Map<Short, MapRenderer> registeredMapViews = Maps.newHashMap();
     private final Map<String, OperatingSystem> systems = Maps.newHashMap();
@@ -30,6 +35,14 @@ public class MapController {
             tmp.shutdown();
     }
 
+    public AnimationWheel getAnimations() {
+        return animations;
+    }
+
+    public FrameGovernor getGovernor() {
+        return governor;
+    }
+
     public ApplicationProvider getProvider(String key) {
         key = key.toLowerCase();
         return defaultProviders.containsKey(key) ? defaultProviders.get(key) : providers.get(key);
@@ -44,10 +57,19 @@ public class MapController {
     }
 
     public void registerSystem(Player player, MapView map) {
+        registerSystem(player, TileLayout.of(map));
+    }
+
+    /**
+     * Registers a system whose screen spans every map of the given layout,
+     * such as maps in item frames on a wall.
+     */
+    public void registerSystem(Player player, TileLayout layout) {
         if (this.systems.containsKey(player.getName()))
             throw new IllegalArgumentException("player already has a system");
-        update(map);
-        systems.put(player.getName(), new OperatingSystem(this, player, map));
+        for (int i = 0; i < layout.getTileCount(); ++i)
+            update(layout.getTile(i));
+        systems.put(player.getName(), new OperatingSystem(this, player, layout));
     }
 
     public void reset() {
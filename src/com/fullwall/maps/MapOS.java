@@ -22,7 +22,9 @@ import com.fullwall.maps.command.ServerCommandException;
 import com.fullwall.maps.command.UnhandledCommandException;
 import com.fullwall.maps.command.WrappedCommandException;
 import com.fullwall.maps.listeners.PlayerListen;
+import com.fullwall.maps.os.Workers;
 import com.fullwall.maps.utils.Messaging;
+import com.fullwall.maps.utils.Palette;
 import com.fullwall.maps.utils.StringHelper;
 
 public class MapOS extends JavaPlugin {
@@ -117,6 +119,9 @@ public class MapOS extends JavaPlugin {
     @Override
     public void onDisable() {
         controller.reset();
+        controller.getGovernor().stop();
+        controller.getAnimations().stop();
+        Workers.shutdown();
         Messaging.log("version [" + desc.getVersion() + "] disabled");
     }
 
@@ -125,6 +130,9 @@ public class MapOS extends JavaPlugin {
         desc = getDescription();
         PluginManager pm = getServer().getPluginManager();
         new PlayerListen().registerEvents(this, pm);
+        controller.getGovernor().start(this);
+        controller.getAnimations().start(this);
+        Palette.load();
         Messaging.log("version [" + desc.getVersion() + "] loaded");
     }
 }
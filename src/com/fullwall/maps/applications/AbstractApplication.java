@@ -3,6 +3,11 @@ package com.fullwall.maps.applications;
 import org.bukkit.entity.Player;
 
 public abstract class AbstractApplication implements Application {
+    @Override
+    public int getTargetFrameRate() {
+        return 0;
+    }
+
     @Override
     public void onCommand(Player player, String command, String[] args) {
     }
@@ -10,6 +10,12 @@ public interface Application extends Saveable {
 
     String getAppName();
 
+    /**
+     * Returns the frame rate this application wants its screen rendered at, or
+     * 0 to use the frame rate set for the system.
+     */
+    int getTargetFrameRate();
+
     void interrupt(InterruptReason reason);
 
     void onCommand(Player player, String command, String[] args);
@@ -1,40 +1,101 @@
 package com.fullwall.maps.applications;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
 import org.bukkit.map.MapCanvas;
 
+import com.fullwall.maps.graphics.Sprite;
+import com.fullwall.maps.graphics.SpriteAtlas;
+import com.fullwall.maps.graphics.SpriteBuilder;
+import com.fullwall.maps.os.AssetCache;
 import com.fullwall.maps.os.Constants;
 import com.fullwall.maps.utils.MapColour;
 import com.fullwall.maps.utils.MapString;
 
 public class ApplicationIcon {
-    private final byte[] icon;
+    private volatile byte[] icon;
     private final String identifier;
+    private final Future<byte[]> loading;
     private final IconScale scale;
+    private volatile Sprite sprite;
 
     public ApplicationIcon(String identifier, IconScale scale, byte[] icon) {
         this.identifier = identifier;
         this.scale = scale;
         this.icon = icon;
+        this.loading = null;
+    }
+
+    /**
+     * Creates an icon whose image is still loading, such as one returned by
+     * {@link AssetCache#get(java.io.File, IconScale)}. A placeholder is drawn
+     * until it is ready.
+     */
+    public ApplicationIcon(String identifier, IconScale scale, Future<byte[]> icon) {
+        this.identifier = identifier;
+        this.scale = scale;
+        this.loading = icon;
     }
 
     public boolean conforms(IconScale check) {
-        return this.icon.length == scale.expectedLength;
+        return getPixels().length == scale.expectedLength;
     }
 
     public String getName() {
         return this.identifier;
     }
 
-    public void render(int x, int y, MapCanvas canvas) {
-        for (int i = 0; i < scale.expectedWidth; ++i) {
-            for (int j = 0; j < scale.expectedHeight; ++j) {
-                byte colour = icon[i + j * scale.expectedHeight];
-                canvas.setPixel(i + x, j + y, colour);
+    /**
+     * Returns the icon and its label, pre-rendered into a shared sprite.
+     */
+    public Sprite getSprite() {
+        if (sprite != null)
+            return sprite;
+        final byte[] pixels = getPixels();
+        // wrapped so that icons with the same pixels share a sprite, as
+        // buffers compare by content where arrays compare by identity.
+        Object key = Arrays.asList(identifier, scale, ByteBuffer.wrap(pixels));
+        Sprite built = SpriteAtlas.get(key, new Callable<Sprite>() {
+            @Override
+            public Sprite call() {
+                MapString label = new MapString(Constants.Font, identifier).colour(MapColour.White).truncate(
+                        scale.expectedWidth);
+                return new SpriteBuilder(scale.expectedWidth, scale.expectedHeight + 1 + label.getHeight())
+                        .drawImage(0, 0, pixels, scale.expectedWidth)
+                        .drawText(0, scale.expectedHeight + 1, label.getFont(), label.toString()).build();
             }
+        });
+        // placeholders are only shown until the icon is loaded.
+        if (icon != null)
+            sprite = built;
+        return built;
+    }
+
+    private byte[] getPixels() {
+        if (icon != null)
+            return icon;
+        if (!loading.isDone())
+            return AssetCache.getPlaceholder(scale);
+        try {
+            icon = loading.get();
+        } catch (Exception ex) {
+            icon = AssetCache.getPlaceholder(scale);
         }
-        MapString string = new MapString(Constants.Font, identifier).colour(MapColour.White).truncate(
-                scale.expectedWidth);
-        canvas.drawText(x, y + scale.expectedHeight + 1, string.getFont(), string.toString());
+        return icon;
+    }
+
+    /**
+     * Returns whether the icon's image has finished loading.
+     */
+    public boolean isLoaded() {
+        return icon != null || loading.isDone();
+    }
+
+    public void render(int x, int y, MapCanvas canvas) {
+        getSprite().draw(canvas, x, y);
     }
 
     public enum IconScale {
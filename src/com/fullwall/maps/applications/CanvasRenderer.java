@@ -11,11 +11,30 @@ public interface CanvasRenderer extends Renderable {
 
     void setDirty();
 
+    /**
+     * Controls the order renderers are painted in. Renderers on a higher layer
+     * are painted later, on top of those below them; renderers on the same
+     * layer are painted in the order they were attached. A renderer's priority
+     * should not change while it is attached.
+     */
     public enum RenderPriority {
-        High,
-        Highest,
-        Low,
-        Lowest,
-        Normal;
+        High(3),
+        Highest(4),
+        Low(1),
+        Lowest(0),
+        Normal(2);
+        private final int layer;
+
+        RenderPriority(int layer) {
+            this.layer = layer;
+        }
+
+        /**
+         * Returns the paint layer of this priority, from 0 (painted first) to 4
+         * (painted last).
+         */
+        public int getLayer() {
+            return layer;
+        }
     }
 }
@@ -0,0 +1,20 @@
+package com.fullwall.maps.applications;
+
+/**
+ * A {@link LayeredRenderer} that declares itself thread-safe. Instead of
+ * drawing inside the server's map render callback, it is rendered on a worker
+ * pool into a private framebuffer, and the screen composes the most recently
+ * completed frame. The main thread never waits for a render in progress.
+ *
+ * {@link #render(com.fullwall.maps.interfaces.Screen, org.bukkit.map.MapCanvas)}
+ * is called off the main thread, at most once at a time per renderer. It must
+ * not use the server API or the canvas cursors, and should only read screen
+ * state that is safe to read concurrently. {@link #isRendering()} is still
+ * called on the main thread, so state shared between the two, such as a dirty
+ * flag, must be safely published. The canvas's base pixels are always 0, as
+ * the screen below may change while rendering.
+ *
+ * @author fullwall
+ */
+public interface ConcurrentRenderer extends LayeredRenderer {
+}
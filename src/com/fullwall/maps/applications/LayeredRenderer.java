@@ -0,0 +1,18 @@
+package com.fullwall.maps.applications;
+
+/**
+ * A renderer that draws into its own offscreen layer instead of the shared
+ * screen buffer. The layer is cached and composed over the screen every frame
+ * using its transparent pixels as a mask, so whatever lies below it is kept
+ * intact.
+ *
+ * The layer is cleared and redrawn whenever {@link #isRendering()} returns
+ * true, typically after {@link #setDirty()} has been called, so each render
+ * must draw the renderer's full contents. Layers are composed above the
+ * shared screen buffer, in {@link RenderPriority} order, and are discarded
+ * when the renderer is removed.
+ *
+ * @author fullwall
+ */
+public interface LayeredRenderer extends CanvasRenderer {
+}
@@ -0,0 +1,32 @@
+package com.fullwall.maps.applications;
+
+import com.fullwall.maps.interfaces.Screen;
+
+/**
+ * A {@link LayeredRenderer} whose output is fully described by a content key.
+ * Screens whose renderers of the same class report equal keys share one
+ * rendered, immutable frame instead of each rendering and storing their own.
+ * A screen whose key changes is given a different frame; shared frames are
+ * never modified.
+ *
+ * When a frame for the current key already exists, {@link #onSharedFrame(Screen)}
+ * is called instead of render. The canvas's base pixels are always 0, since
+ * the frame does not belong to any one screen.
+ *
+ * @author fullwall
+ */
+public interface SharedRenderer extends LayeredRenderer {
+    /**
+     * Returns a key identifying everything this renderer would draw. Keys must
+     * implement equals and hashCode by value, and renderers of the same class
+     * with equal keys must draw identical pixels.
+     */
+    Object getContentKey();
+
+    /**
+     * Called instead of rendering when an existing frame is shown. Performs
+     * any work other than drawing that rendering would, such as attaching
+     * buttons to the screen, and clears the dirty state.
+     */
+    void onSharedFrame(Screen screen);
+}
@@ -7,13 +7,24 @@ import com.fullwall.maps.applications.CanvasRenderer;
  * {@link #isFinished()} returns true. For best use, implementations should
  * always return true at some point. Note that this can be terminated at any
  * time by the screen.
- * 
+ *
+ * Frames are run by wall-clock time, independently of how often the screen is
+ * rendered, and the screen is redrawn after every frame.
+ *
+ * @see KeyframeAnimation
+ *
  * @author fullwall
  */
 public interface Animation extends ScreenAttachment, CanvasRenderer {
     /**
-     * Used to notify the animation of its status. Will be incremented every
-     * render pass.
+     * @return the time between frames, in milliseconds. Frames are run at
+     *         most once per server tick.
+     */
+    long getFrameInterval();
+
+    /**
+     * Used to notify the animation of its status. Called once per frame, every
+     * {@link #getFrameInterval()} milliseconds.
      */
     void incrementFrame();
 
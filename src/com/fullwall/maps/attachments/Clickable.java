@@ -3,6 +3,8 @@ package com.fullwall.maps.attachments;
 /**
  * A representation of a clickable area. Extends MouseListener. Mouse events
  * will only be called if the click intersects the given ClickableArea.
+ * Screens index the area when the clickable is attached, so a clickable whose
+ * area changes should be removed and attached again.
  * 
  * @see MouseListener
  * @see
@@ -0,0 +1,48 @@
+package com.fullwall.maps.attachments;
+
+/**
+ * Shapes the progress of a {@link KeyframeAnimation} between two keyframes.
+ *
+ * @author fullwall
+ */
+public enum Easing {
+    EaseIn {
+        @Override
+        public double apply(double progress) {
+            return progress * progress;
+        }
+    },
+    EaseInOut {
+        @Override
+        public double apply(double progress) {
+            return progress < 0.5 ? 2 * progress * progress : 1 - 2 * (1 - progress) * (1 - progress);
+        }
+    },
+    EaseOut {
+        @Override
+        public double apply(double progress) {
+            return 1 - (1 - progress) * (1 - progress);
+        }
+    },
+    Linear {
+        @Override
+        public double apply(double progress) {
+            return progress;
+        }
+    },
+    /**
+     * Holds the previous value until the keyframe is reached.
+     */
+    Step {
+        @Override
+        public double apply(double progress) {
+            return progress < 1 ? 0 : 1;
+        }
+    };
+
+    /**
+     * Maps linear progress between 0 and 1 to eased progress, which is also 0
+     * at the start and 1 at the end.
+     */
+    public abstract double apply(double progress);
+}
@@ -0,0 +1,151 @@
+package com.fullwall.maps.attachments;
+
+import java.util.List;
+
+import com.fullwall.maps.applications.AbstractCanvasRenderer;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * An animation of a single value between keyframes, which subclasses draw
+ * when rendered. The value is worked out from the time since the first frame,
+ * so it stays correct however often frames actually run. Completion callbacks
+ * run on the frame the last keyframe is reached.
+ *
+ * @author fullwall
+ */
+public abstract class KeyframeAnimation extends AbstractCanvasRenderer implements Animation {
+    private final List<Runnable> callbacks = Lists.newArrayList();
+    private boolean finished;
+    private long frameInterval = 50;
+    private final List<Keyframe> keyframes = Lists.newArrayList();
+    private boolean rendered;
+    private long start = -1;
+    private double value;
+
+    /**
+     * Adds a keyframe at the given time, in milliseconds from the start of
+     * the animation. The easing applies to the change from the previous
+     * keyframe to this one.
+     */
+    public KeyframeAnimation addKeyframe(long time, double value, Easing easing) {
+        Preconditions.checkArgument(time >= 0, "time can't be negative");
+        Preconditions.checkNotNull(easing, "easing can't be null");
+        int index = keyframes.size();
+        while (index > 0 && keyframes.get(index - 1).time > time)
+            --index;
+        keyframes.add(index, new Keyframe(time, value, easing));
+        if (keyframes.size() == 1)
+            this.value = value;
+        return this;
+    }
+
+    /**
+     * Returns the time of the last keyframe, in milliseconds.
+     */
+    public long getDuration() {
+        return keyframes.isEmpty() ? 0 : keyframes.get(keyframes.size() - 1).time;
+    }
+
+    @Override
+    public long getFrameInterval() {
+        return frameInterval;
+    }
+
+    /**
+     * Returns the value at the current frame.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public void incrementFrame() {
+        if (finished)
+            return;
+        long now = System.currentTimeMillis();
+        if (start == -1)
+            start = now;
+        long elapsed = now - start;
+        value = valueAt(elapsed);
+        if (elapsed < getDuration())
+            return;
+        finished = true;
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns whether the current value has already been drawn.
+     */
+    protected boolean isRendered() {
+        return rendered;
+    }
+
+    /**
+     * Adds a callback that runs when the animation finishes.
+     */
+    public KeyframeAnimation onComplete(Runnable callback) {
+        callbacks.add(callback);
+        return this;
+    }
+
+    @Override
+    public void setDirty() {
+        this.rendered = false;
+    }
+
+    /**
+     * Records that the current value has been drawn, until the next frame.
+     */
+    protected void setRendered() {
+        this.rendered = true;
+    }
+
+    /**
+     * Sets the time between frames, in milliseconds.
+     */
+    public KeyframeAnimation setFrameInterval(long frameInterval) {
+        Preconditions.checkArgument(frameInterval > 0, "interval must be positive");
+        this.frameInterval = frameInterval;
+        return this;
+    }
+
+    /**
+     * Returns the value at the given time since the start of the animation.
+     */
+    public double valueAt(long elapsed) {
+        if (keyframes.isEmpty())
+            return value;
+        Keyframe previous = keyframes.get(0);
+        if (elapsed <= previous.time)
+            return previous.value;
+        for (int i = 1; i < keyframes.size(); ++i) {
+            Keyframe next = keyframes.get(i);
+            if (elapsed < next.time) {
+                double progress = (double) (elapsed - previous.time) / (next.time - previous.time);
+                return previous.value + (next.value - previous.value) * next.easing.apply(progress);
+            }
+            previous = next;
+        }
+        return previous.value;
+    }
+
+    private static class Keyframe {
+        private final Easing easing;
+        private final long time;
+        private final double value;
+
+        private Keyframe(long time, double value, Easing easing) {
+            this.time = time;
+            this.value = value;
+            this.easing = easing;
+        }
+    }
+}
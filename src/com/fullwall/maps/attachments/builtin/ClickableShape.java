@@ -11,6 +11,10 @@ public class ClickableShape implements ClickableArea {
         this.shape = shape;
     }
 
+    public Shape getShape() {
+        return shape;
+    }
+
     @Override
     public boolean intersects(MouseEvent event) {
         return shape.interescts(event.getMouse().getX(), event.getMouse().getY());
@@ -0,0 +1,221 @@
+package com.fullwall.maps.graphics;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.bukkit.map.MapFont;
+import org.bukkit.map.MapFont.CharacterSprite;
+import org.bukkit.map.MapPalette;
+
+import com.fullwall.maps.os.RawCanvas;
+import com.google.common.collect.Maps;
+
+/**
+ * The glyphs of a {@link MapFont}, rasterised once into one bitmask per glyph
+ * row alongside each glyph's width. Measuring and drawing text parse colour
+ * codes in the same pass as the glyphs and allocate
+ * nothing, and drawing writes straight into a raw buffer.
+ *
+ * Glyphs are read from the font when it is first used and never change, so
+ * the same instance can be used from any thread.
+ *
+ * @author fullwall
+ */
+public class Glyphs {
+    private final int height;
+    private final Page[] pages = new Page[256];
+
+    private Glyphs(MapFont font) {
+        this.height = font.getHeight();
+        for (int page = 0; page < pages.length; ++page) {
+            for (int low = 0; low < 256; ++low) {
+                char ch = (char) (page << 8 | low);
+                CharacterSprite sprite = font.getChar(ch);
+                if (sprite == null)
+                    continue;
+                if (pages[page] == null)
+                    pages[page] = new Page();
+                int width = Math.min(sprite.getWidth(), 32);
+                int[] mask = new int[height];
+                for (int row = 0; row < height; ++row) {
+                    for (int col = 0; col < width; ++col) {
+                        if (sprite.get(row, col))
+                            mask[row] |= 1 << col;
+                    }
+                }
+                pages[page].masks[low] = mask;
+                pages[page].widths[low] = (byte) width;
+            }
+        }
+    }
+
+    /**
+     * Draws text into a raw canvas, clipped to its bounds, in the same way as
+     * {@link org.bukkit.map.MapCanvas#drawText(int, int, MapFont, String)}.
+     * Text starts out dark grey and newlines return to the starting column.
+     * Each run of written pixels is marked dirty, and text in a negative
+     * colour is not drawn.
+     *
+     * @throws IllegalArgumentException
+     *             if the text contains a malformed colour code, as Bukkit does
+     */
+    public void draw(RawCanvas canvas, int x, int y, CharSequence text) {
+        draw(canvas.getBuffer(), canvas.getWidth(), canvas.getHeight(), x, y, text, canvas);
+    }
+
+    /**
+     * Draws text into a row-major buffer of the given size, clipped to its
+     * bounds.
+     */
+    public void draw(byte[] buffer, int bufferWidth, int bufferHeight, int x, int y, CharSequence text) {
+        draw(buffer, bufferWidth, bufferHeight, x, y, text, null);
+    }
+
+    private void draw(byte[] buffer, int bufferWidth, int bufferHeight, int x, int y, CharSequence text,
+            RawCanvas dirty) {
+        int startX = x;
+        byte colour = MapPalette.DARK_GRAY;
+        for (int i = 0, length = text.length(); i < length; ++i) {
+            char ch = text.charAt(i);
+            if (ch == '\n') {
+                x = startX;
+                y += height + 1;
+                continue;
+            }
+            if (ch == COLOUR_CHAR) {
+                int end = findCodeEnd(text, i);
+                if (end < 0)
+                    throw new IllegalArgumentException("text contains an unterminated colour code");
+                colour = (byte) parseCode(text, i + 1, end);
+                i = end;
+                continue;
+            }
+            Page page = pages[ch >> 8];
+            int[] mask = page == null ? null : page.masks[ch & 0xFF];
+            if (mask == null)
+                continue;
+            int width = page.widths[ch & 0xFF];
+            if (x < bufferWidth && x + width > 0) {
+                int startRow = Math.max(0, -y), endRow = Math.min(height, bufferHeight - y);
+                // clip the glyph's columns to the buffer once, as a mask.
+                int clip = (x < 0 ? -1 << -x : -1) & (x + width > bufferWidth ? (1 << bufferWidth - x) - 1 : -1);
+                for (int row = startRow; colour >= 0 && row < endRow; ++row) {
+                    int offset = (y + row) * bufferWidth + x;
+                    // write each run of set bits at once.
+                    for (int bits = mask[row] & clip; bits != 0;) {
+                        int start = Integer.numberOfTrailingZeros(bits);
+                        int run = Integer.numberOfTrailingZeros(~(bits >>> start));
+                        Arrays.fill(buffer, offset + start, offset + start + run, colour);
+                        if (dirty != null)
+                            dirty.markDirty(x + start, y + row, run, 1);
+                        bits &= run == 32 ? 0 : ~(((1 << run) - 1) << start);
+                    }
+                }
+            }
+            x += width + 1;
+        }
+    }
+
+    /**
+     * Returns the index of the <tt>;</tt> ending a valid colour code that
+     * starts at the given index, or -1 if there is none. As in Bukkit, a code
+     * runs to the next <tt>;</tt> and is valid if what lies between parses
+     * with {@link Byte#parseByte(String)}.
+     */
+    static int findCodeEnd(CharSequence text, int start) {
+        int end = start + 1, length = text.length();
+        while (end < length && text.charAt(end) != ';')
+            ++end;
+        if (end >= length)
+            return -1;
+        int i = start + 1;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+            ++i;
+        if (i == end)
+            return -1;
+        for (int value = 0; i < end; ++i) {
+            int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0)
+                return -1;
+            value = value * 10 + digit;
+            // leading zeros are allowed, so stop on the value, not the length.
+            if (value > -Byte.MIN_VALUE)
+                return -1;
+        }
+        int value = parseCode(text, start + 1, end);
+        return value < Byte.MIN_VALUE || value > Byte.MAX_VALUE ? -1 : end;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the width of the given character, or -1 if the font doesn't
+     * contain it.
+     */
+    public int getWidth(char ch) {
+        Page page = pages[ch >> 8];
+        return page == null || page.masks[ch & 0xFF] == null ? -1 : page.widths[ch & 0xFF];
+    }
+
+    /**
+     * Returns the width of the given text, ignoring colour codes, in the same
+     * way as {@link MapFont#getWidth(String)}: the width of every character
+     * plus one pixel of spacing between them. Characters the font doesn't
+     * contain are skipped, as are the colour characters of malformed codes.
+     */
+    public int measure(CharSequence text) {
+        int width = 0, count = 0;
+        for (int i = 0, length = text.length(); i < length; ++i) {
+            char ch = text.charAt(i);
+            if (ch == COLOUR_CHAR) {
+                int end = findCodeEnd(text, i);
+                if (end >= 0) {
+                    i = end;
+                    continue;
+                }
+            }
+            int glyph = getWidth(ch);
+            if (glyph < 0)
+                continue;
+            width += glyph;
+            ++count;
+        }
+        return count == 0 ? 0 : width + count - 1;
+    }
+
+    private static class Page {
+        private final int[][] masks = new int[256][];
+        private final byte[] widths = new byte[256];
+    }
+
+    private static final Map<MapFont, Glyphs> fonts = Maps.newIdentityHashMap();
+
+    static final char COLOUR_CHAR = '\u00A7';
+
+    /**
+     * Returns the glyphs of the given font, rasterising them on first use.
+     */
+    public static Glyphs of(MapFont font) {
+        synchronized (fonts) {
+            Glyphs glyphs = fonts.get(font);
+            if (glyphs == null)
+                fonts.put(font, glyphs = new Glyphs(font));
+            return glyphs;
+        }
+    }
+
+    /**
+     * Parses the number between the given indices, which must be an optional
+     * sign followed by digits.
+     */
+    static int parseCode(CharSequence text, int start, int end) {
+        boolean negative = text.charAt(start) == '-', signed = negative || text.charAt(start) == '+';
+        int value = 0;
+        for (int i = signed ? start + 1 : start; i < end; ++i) {
+            value = value * 10 + Character.digit(text.charAt(i), 10);
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,66 @@
+package com.fullwall.maps.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compositing loops over buffers of map colours. Where possible, eight pixels
+ * are processed at a time as a <tt>long</tt> (SWAR), read through a
+ * {@link ByteBuffer} view of the buffer; runs of fully opaque or fully
+ * transparent pixels then cost a single read. Setting the system property
+ * <tt>mapos.scalar</tt> falls back to plain byte loops.
+ *
+ * @author fullwall
+ */
+public class Kernels {
+    private Kernels() {
+    }
+
+    /**
+     * Copies the pixels of <tt>source</tt> between <tt>offset</tt> and
+     * <tt>offset + length</tt> over the same span of <tt>target</tt>, skipping
+     * negative (transparent) pixels. Both buffers must be views created by
+     * {@link #view(byte[])}.
+     */
+    public static void blendOver(ByteBuffer source, ByteBuffer target, int offset, int length) {
+        int i = offset, end = offset + length;
+        if (SWAR) {
+            for (; i + 8 <= end; i += 8) {
+                long pixels = source.getLong(i);
+                long signs = pixels & SIGN_BITS;
+                if (signs == 0) {
+                    target.putLong(i, pixels);
+                } else if (signs != SIGN_BITS) {
+                    // 0xFF in every transparent byte, 0 in every opaque one.
+                    long transparent = (signs >>> 7) * 0xFF;
+                    target.putLong(i, pixels & ~transparent | target.getLong(i) & transparent);
+                }
+            }
+        }
+        byte[] from = source.array(), to = target.array();
+        for (; i < end; ++i) {
+            if (from[i] >= 0)
+                to[i] = from[i];
+        }
+    }
+
+    /**
+     * Returns whether the SWAR kernels are in use.
+     */
+    public static boolean isSwar() {
+        return SWAR;
+    }
+
+    /**
+     * Returns a view of the given buffer that the kernels can read eight
+     * pixels at a time. Views should be created once and kept alongside their
+     * buffers.
+     */
+    public static ByteBuffer view(byte[] buffer) {
+        return ByteBuffer.wrap(buffer).order(ByteOrder.nativeOrder());
+    }
+
+    private static final long SIGN_BITS = 0x8080808080808080L;
+
+    private static final boolean SWAR = !Boolean.getBoolean("mapos.scalar");
+}
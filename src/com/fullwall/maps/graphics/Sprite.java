@@ -0,0 +1,132 @@
+package com.fullwall.maps.graphics;
+
+import org.bukkit.map.MapCanvas;
+
+import com.fullwall.maps.os.RawCanvas;
+
+/**
+ * An immutable, pre-rendered image in map colours, run-length encoded. Each
+ * row is stored as pairs of a transparent run to skip and an opaque run to
+ * copy, and only the opaque pixels are kept, packed row after row. Drawing
+ * skips the transparent runs and copies each opaque run into the canvas buffer
+ * with a single {@link System#arraycopy(Object, int, Object, int, int)}.
+ *
+ * @author fullwall
+ */
+public class Sprite {
+    private final byte[] data;
+    private final int height;
+    private final int[] rowData;
+    private final int[] rowRuns;
+    private final int[] runs;
+    private final int width;
+
+    /**
+     * Encodes the given row-major pixels. Negative pixels are transparent.
+     */
+    Sprite(int width, int height, byte[] pixels) {
+        this.width = width;
+        this.height = height;
+        int runCount = 0, opaque = 0;
+        for (int i = 0; i < width * height; ++i) {
+            if (pixels[i] < 0)
+                continue;
+            ++opaque;
+            if (i % width == 0 || pixels[i - 1] < 0)
+                ++runCount;
+        }
+        this.data = new byte[opaque];
+        this.runs = new int[runCount * 2];
+        this.rowRuns = new int[height + 1];
+        this.rowData = new int[height];
+        int run = 0, written = 0;
+        for (int y = 0; y < height; ++y) {
+            rowRuns[y] = run;
+            rowData[y] = written;
+            int offset = y * width, x = 0, previous = 0;
+            while (x < width) {
+                while (x < width && pixels[offset + x] < 0)
+                    ++x;
+                if (x == width)
+                    break;
+                int start = x;
+                while (x < width && pixels[offset + x] >= 0)
+                    ++x;
+                runs[run++] = start - previous;
+                runs[run++] = x - start;
+                System.arraycopy(pixels, offset + start, data, written, x - start);
+                written += x - start;
+                previous = x;
+            }
+        }
+        rowRuns[height] = run;
+    }
+
+    /**
+     * Draws the sprite with its top left corner at the given position,
+     * clipped to the canvas.
+     */
+    public void draw(MapCanvas canvas, int x, int y) {
+        draw(RawCanvas.of(canvas), x, y);
+    }
+
+    /**
+     * Draws the sprite into a raw canvas with its top left corner at the given
+     * position, clipped to the canvas. Each copied run is marked dirty.
+     */
+    public void draw(RawCanvas canvas, int x, int y) {
+        byte[] buffer = canvas.getBuffer();
+        int canvasWidth = canvas.getWidth();
+        int startRow = Math.max(0, -y), endRow = Math.min(height, canvas.getHeight() - y);
+        if (x >= canvasWidth || x + width <= 0)
+            return;
+        for (int row = startRow; row < endRow; ++row) {
+            int source = rowData[row], target = (y + row) * canvasWidth + x, col = 0;
+            for (int run = rowRuns[row]; run < rowRuns[row + 1]; run += 2) {
+                col += runs[run];
+                int length = runs[run + 1];
+                int start = Math.max(col, -x), end = Math.min(col + length, canvasWidth - x);
+                if (start < end) {
+                    System.arraycopy(data, source + start - col, buffer, target + start, end - start);
+                    canvas.markDirty(x + start, y + row, end - start, 1);
+                }
+                source += length;
+                col += length;
+            }
+        }
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the colour of the given pixel, or -1 if the pixel is
+     * transparent.
+     */
+    public byte getPixel(int x, int y) {
+        int source = rowData[y], col = 0;
+        for (int run = rowRuns[y]; run < rowRuns[y + 1]; run += 2) {
+            col += runs[run];
+            if (x < col)
+                break;
+            if (x < col + runs[run + 1])
+                return data[source + x - col];
+            source += runs[run + 1];
+            col += runs[run + 1];
+        }
+        return -1;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Encodes an image of map colours, in row-major order. Negative pixels
+     * are transparent.
+     */
+    public static Sprite of(byte[] pixels, int width) {
+        return new Sprite(width, pixels.length / width, pixels);
+    }
+}
@@ -0,0 +1,41 @@
+package com.fullwall.maps.graphics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A shared store of pre-rendered sprites, so that every screen drawing the
+ * same icon or label uses one sprite. Sprites are softly held and rebuilt if
+ * memory ran short.
+ *
+ * @author fullwall
+ */
+public class SpriteAtlas {
+    private SpriteAtlas() {
+    }
+
+    private static final Cache<Object, Sprite> sprites = CacheBuilder.newBuilder().softValues().build();
+
+    /**
+     * Returns the sprite stored under the given key, building it if needed.
+     * Keys must implement equals and hashCode by value.
+     */
+    public static Sprite get(Object key, Callable<Sprite> builder) {
+        try {
+            return sprites.get(key, builder);
+        } catch (ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    /**
+     * Discards the sprite stored under the given key.
+     */
+    public static void invalidate(Object key) {
+        sprites.invalidate(key);
+    }
+}
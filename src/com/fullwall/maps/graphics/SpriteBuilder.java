@@ -0,0 +1,61 @@
+package com.fullwall.maps.graphics;
+
+import java.util.Arrays;
+
+import org.bukkit.map.MapFont;
+
+/**
+ * Draws a {@link Sprite}. The builder starts out fully transparent.
+ *
+ * @author fullwall
+ */
+public class SpriteBuilder {
+    private final int height;
+    private final byte[] pixels;
+    private final int width;
+
+    public SpriteBuilder(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new byte[width * height];
+        Arrays.fill(pixels, TRANSPARENT);
+    }
+
+    /**
+     * Returns a sprite of what has been drawn so far.
+     */
+    public Sprite build() {
+        return new Sprite(width, height, pixels.clone());
+    }
+
+    /**
+     * Draws an image of map colours, in row-major order, with its top left
+     * corner at the given position.
+     */
+    public SpriteBuilder drawImage(int x, int y, byte[] image, int imageWidth) {
+        int imageHeight = image.length / imageWidth;
+        for (int row = 0; row < imageHeight; ++row) {
+            for (int col = 0; col < imageWidth; ++col) {
+                setPixel(x + col, y + row, image[row * imageWidth + col]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Draws text the same way as {@link org.bukkit.map.MapCanvas#drawText(int, int, MapFont, String)},
+     * including colour codes.
+     */
+    public SpriteBuilder drawText(int x, int y, MapFont font, String text) {
+        Glyphs.of(font).draw(pixels, width, height, x, y, text);
+        return this;
+    }
+
+    public SpriteBuilder setPixel(int x, int y, byte colour) {
+        if (x >= 0 && y >= 0 && x < width && y < height)
+            pixels[y * width + x] = colour;
+        return this;
+    }
+
+    private static final byte TRANSPARENT = -1;
+}
@@ -0,0 +1,96 @@
+package com.fullwall.maps.graphics;
+
+import java.util.Arrays;
+
+import org.bukkit.map.MapFont;
+
+/**
+ * A line of text measured once: the offset of every visible character, as
+ * prefix sums of glyph widths, and where each one ends in the original text.
+ * Finding how much of the text fits a width is then a binary search rather
+ * than repeatedly re-measuring shorter copies.
+ *
+ * @author fullwall
+ */
+public class TextLayout {
+    private final int count;
+    private final int[] ends;
+    private final int[] offsets;
+    private final CharSequence text;
+
+    /**
+     * Lays out the given text in the given font. Colour codes and characters
+     * the font doesn't contain take up no space.
+     */
+    public TextLayout(MapFont font, CharSequence text) {
+        Glyphs glyphs = Glyphs.of(font);
+        this.text = text;
+        int[] offsets = new int[text.length() + 1], ends = new int[text.length()];
+        int count = 0;
+        for (int i = 0, length = text.length(); i < length; ++i) {
+            char ch = text.charAt(i);
+            if (ch == Glyphs.COLOUR_CHAR) {
+                int end = Glyphs.findCodeEnd(text, i);
+                if (end >= 0) {
+                    i = end;
+                    continue;
+                }
+            }
+            int width = glyphs.getWidth(ch);
+            if (width < 0)
+                continue;
+            // offsets[n] is the left edge of the nth visible character.
+            offsets[count + 1] = offsets[count] + width + 1;
+            ends[count++] = i + 1;
+        }
+        this.count = count;
+        this.offsets = Arrays.copyOf(offsets, count + 1);
+        this.ends = Arrays.copyOf(ends, count);
+    }
+
+    /**
+     * Returns the number of visible characters.
+     */
+    public int getLength() {
+        return count;
+    }
+
+    /**
+     * Returns the width of the text, in the same way as
+     * {@link MapFont#getWidth(String)}.
+     */
+    public int getWidth() {
+        return widthOf(count);
+    }
+
+    /**
+     * Returns the longest prefix of the text that is at most the given width
+     * wide. Colour codes before the last visible character are kept.
+     */
+    public CharSequence truncate(int maxWidth) {
+        int fits = truncatedLength(maxWidth);
+        return fits == count ? text : text.subSequence(0, fits == 0 ? 0 : ends[fits - 1]);
+    }
+
+    /**
+     * Returns how many visible characters fit in the given width.
+     */
+    public int truncatedLength(int maxWidth) {
+        // widths grow with the number of characters, so search for the last
+        // one that fits.
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (widthOf(middle) <= maxWidth) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int widthOf(int characters) {
+        return characters == 0 ? 0 : offsets[characters] - 1;
+    }
+}
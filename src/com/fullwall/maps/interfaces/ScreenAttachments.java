@@ -6,6 +6,8 @@ import com.fullwall.maps.attachments.MouseEvent;
 import com.fullwall.maps.attachments.ScreenAttachment;
 
 public interface ScreenAttachments extends AttachableSurface<ScreenAttachment>, Renderable {
+    boolean hasRunningAnimations();
+
     void processKeyEvent(KeyEvent event);
 
     void processMouseEvent(MouseEvent event);
@@ -10,10 +10,49 @@ public interface ScreenRenderer extends AttachableSurface<CanvasRenderer> {
 
     void clearScreen();
 
+    /**
+     * Sends changes that were rendered since the given canvas was last
+     * updated, without rendering. Screens made up of several maps render once
+     * and update the remaining tiles this way.
+     */
+    void flush(MapCanvas canvas);
+
+    /**
+     * Refreshes the player's map. If <tt>rerender</tt> is true, the screen is
+     * rendered and only the changed area is sent; otherwise the full image is
+     * sent again.
+     */
     void forceRefresh(boolean rerender);
 
+    /**
+     * Returns the height of the screen in pixels.
+     */
+    int getHeight();
+
+    /**
+     * Returns the raw screen buffer, in row-major order. Code that writes to it directly must
+     * report the area it changed using {@link #markDamaged(int, int, int, int)}.
+     */
     byte[] getScreenRaw();
 
+    /**
+     * Returns the width of the screen in pixels, which is also the length of a
+     * row of the raw screen buffer.
+     */
+    int getWidth();
+
+    /**
+     * Returns whether rendering would change the screen, either because an
+     * attached renderer wants to draw or because an area has been damaged.
+     */
+    boolean isFramePending();
+
+    /**
+     * Marks an area of the screen as changed so that it is sent on the next
+     * render.
+     */
+    void markDamaged(int x, int y, int width, int height);
+
     void render(Screen screen, MapCanvas canvas);
 
     void setScreenRaw(byte[] image);
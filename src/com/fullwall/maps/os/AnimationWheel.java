@@ -0,0 +1,149 @@
+package com.fullwall.maps.os;
+
+import java.util.Map;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import com.fullwall.maps.attachments.Animation;
+import com.google.common.collect.Maps;
+
+/**
+ * Runs the frames of every {@link Animation} on every screen by wall-clock
+ * time, using a hashed timing wheel. Each slot of the wheel holds the
+ * animations due in one server tick, and each tick only the current slot is
+ * visited, so animations that are waiting for their next frame cost nothing.
+ *
+ * When an animation's frame comes up, it is advanced and its screen is asked
+ * for a new frame. Frames that were missed while the server was behind are
+ * dropped rather than run in a burst.
+ *
+ * @author fullwall
+ */
+public class AnimationWheel implements Runnable {
+    private final Map<Animation, Entry> entries = Maps.newIdentityHashMap();
+    private long epoch = System.nanoTime();
+    private long processed;
+    private final Entry[] slots = new Entry[WHEEL_SIZE];
+    private int taskId = -1;
+
+    private void add(Entry entry) {
+        int slot = (int) (entry.deadline & WHEEL_SIZE - 1);
+        entry.next = slots[slot];
+        slots[slot] = entry;
+    }
+
+    /**
+     * Stops running the frames of the given animation.
+     */
+    void cancel(Animation animation) {
+        Entry entry = entries.remove(animation);
+        if (entry != null)
+            entry.cancelled = true;
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - epoch) / TICK_NANOS;
+    }
+
+    /**
+     * Returns the number of animations currently scheduled.
+     */
+    public int getScheduled() {
+        return entries.size();
+    }
+
+    @Override
+    public void run() {
+        long now = currentTick();
+        while (processed < now) {
+            ++processed;
+            int slot = (int) (processed & WHEEL_SIZE - 1);
+            Entry entry = slots[slot];
+            slots[slot] = null;
+            while (entry != null) {
+                Entry next = entry.next;
+                if (!entry.cancelled) {
+                    if (entry.deadline > processed) {
+                        // due in a later turn of the wheel.
+                        add(entry);
+                    } else {
+                        runFrame(entry, now);
+                    }
+                }
+                entry = next;
+            }
+        }
+    }
+
+    private void runFrame(Entry entry, long now) {
+        Animation animation = entry.animation;
+        animation.incrementFrame();
+        animation.setDirty();
+        boolean finished = animation.isFinished();
+        if (finished) {
+            entries.remove(animation);
+        } else {
+            entry.deadline = now + ticksOf(animation.getFrameInterval());
+            add(entry);
+        }
+        entry.owner.onAnimationFrame(animation, finished);
+    }
+
+    /**
+     * Schedules the frames of an animation attached to the given screen
+     * attachments, starting one frame interval from now.
+     */
+    void schedule(Animation animation, MapScreenAttachments owner) {
+        if (entries.containsKey(animation))
+            return;
+        Entry entry = new Entry(animation, owner, Math.max(processed, currentTick())
+                + ticksOf(animation.getFrameInterval()));
+        entries.put(animation, entry);
+        add(entry);
+    }
+
+    /**
+     * Starts running animations using the server scheduler.
+     */
+    public void start(Plugin plugin) {
+        if (taskId != -1)
+            return;
+        // carry on from the last processed tick.
+        epoch = System.nanoTime() - processed * TICK_NANOS;
+        taskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(plugin, this, 1, 1);
+    }
+
+    /**
+     * Stops running animations. Scheduled animations are kept and resume when
+     * the wheel is started again.
+     */
+    public void stop() {
+        if (taskId == -1)
+            return;
+        Bukkit.getScheduler().cancelTask(taskId);
+        taskId = -1;
+    }
+
+    private static class Entry {
+        private final Animation animation;
+        private boolean cancelled;
+        private long deadline;
+        private Entry next;
+        private final MapScreenAttachments owner;
+
+        private Entry(Animation animation, MapScreenAttachments owner, long deadline) {
+            this.animation = animation;
+            this.owner = owner;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final long TICK_NANOS = 50000000L;
+
+    private static final int WHEEL_SIZE = 64;
+
+    private static long ticksOf(long millis) {
+        return Math.max(1, (millis * 1000000L + TICK_NANOS - 1) / TICK_NANOS);
+    }
+}
@@ -0,0 +1,275 @@
+package com.fullwall.maps.os;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import com.fullwall.maps.applications.ApplicationIcon.IconScale;
+import com.fullwall.maps.utils.MapColour;
+import com.fullwall.maps.utils.Messaging;
+import com.fullwall.maps.utils.Palette;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Loads images on a background thread and keeps them converted to map
+ * colours, scaled to an {@link IconScale}. Recently used assets are held in
+ * memory up to a byte budget, and every converted asset is stored in a binary
+ * cache file so that images are only decoded again when their file changes.
+ *
+ * Callers that can't wait use {@link #getNow(File, IconScale)}, which returns
+ * a placeholder until the asset is ready.
+ *
+ * @author fullwall
+ */
+public class AssetCache {
+    private AssetCache() {
+    }
+
+    private static final int BUDGET = 4 * 1024 * 1024;
+
+    private static final Cache<List<Object>, byte[]> assets = CacheBuilder.newBuilder().maximumWeight(BUDGET)
+            .weigher(new Weigher<List<Object>, byte[]>() {
+                @Override
+                public int weigh(List<Object> key, byte[] value) {
+                    return value.length;
+                }
+            }).build();
+
+    private static final ListeningExecutorService loader = MoreExecutors.listeningDecorator(Executors
+            .newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("MapOS assets")
+                    .build()));
+
+    private static final ConcurrentMap<List<Object>, ListenableFuture<byte[]>> loading = Maps
+            .newConcurrentMap();
+
+    private static final Map<IconScale, byte[]> placeholders = Maps.newEnumMap(IconScale.class);
+
+    // the store is only touched from the loader thread.
+    private static Map<List<Object>, StoreEntry> store;
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null)
+            return;
+        try {
+            file.close();
+        } catch (IOException ex) {
+        }
+    }
+
+    private static void compact(Map<List<Object>, StoreEntry> index) {
+        Map<List<Object>, byte[]> live = Maps.newLinkedHashMap();
+        try {
+            for (Map.Entry<List<Object>, StoreEntry> entry : index.entrySet()) {
+                live.put(entry.getKey(), readStored(entry.getValue()));
+            }
+            STORE_FILE.delete();
+            Map<List<Object>, StoreEntry> modified = Maps.newHashMap(index);
+            index.clear();
+            for (Map.Entry<List<Object>, byte[]> entry : live.entrySet()) {
+                index.put(entry.getKey(),
+                        writeStored(entry.getKey(), modified.get(entry.getKey()).modified, entry.getValue()));
+            }
+        } catch (IOException ex) {
+            Messaging.log("Unable to compact the asset cache.");
+        }
+    }
+
+    /**
+     * Returns the asset at the given path, scaled to the given icon scale. The
+     * future fails if the image could not be loaded.
+     */
+    public static ListenableFuture<byte[]> get(final File path, final IconScale scale) {
+        final List<Object> key = Arrays.<Object> asList(path.getPath(), scale);
+        byte[] cached = assets.getIfPresent(key);
+        if (cached != null)
+            return Futures.immediateFuture(cached);
+        ListenableFuture<byte[]> pending = loading.get(key);
+        if (pending != null)
+            return pending;
+        ListenableFutureTask<byte[]> task = ListenableFutureTask.create(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                try {
+                    byte[] loaded = load(key, path, scale);
+                    assets.put(key, loaded);
+                    return loaded;
+                } finally {
+                    loading.remove(key);
+                }
+            }
+        });
+        pending = loading.putIfAbsent(key, task);
+        if (pending != null)
+            return pending;
+        loader.execute(task);
+        return task;
+    }
+
+    /**
+     * Returns the asset if it is loaded, or otherwise starts loading it and
+     * returns a placeholder of the right size.
+     */
+    public static byte[] getNow(File path, IconScale scale) {
+        ListenableFuture<byte[]> future = get(path, scale);
+        if (future.isDone()) {
+            try {
+                return future.get();
+            } catch (Exception ex) {
+                // fall through to the placeholder.
+            }
+        }
+        return getPlaceholder(scale);
+    }
+
+    /**
+     * Returns the image shown in place of assets of the given scale that are
+     * not loaded, or failed to load. It must not be modified.
+     */
+    public static synchronized byte[] getPlaceholder(IconScale scale) {
+        byte[] placeholder = placeholders.get(scale);
+        if (placeholder == null) {
+            placeholder = new byte[scale.getArrayLength()];
+            Arrays.fill(placeholder, MapColour.LightGrey.colour());
+            placeholders.put(scale, placeholder);
+        }
+        return placeholder;
+    }
+
+    private static byte[] load(List<Object> key, File path, IconScale scale) throws IOException {
+        if (store == null)
+            store = openStore();
+        StoreEntry entry = store.get(key);
+        long modified = path.lastModified();
+        if (entry != null && entry.modified == modified)
+            return readStored(entry);
+        BufferedImage image = ImageIO.read(path);
+        if (image == null)
+            throw new IOException("unable to decode " + path.getName());
+        if (image.getWidth() != scale.getWidth() || image.getHeight() != scale.getHeight())
+            image = resize(image, scale);
+        byte[] converted = Palette.convert(image);
+        try {
+            store.put(key, writeStored(key, modified, converted));
+        } catch (IOException ex) {
+            Messaging.log("Unable to cache " + path.getName() + ".");
+        }
+        return converted;
+    }
+
+    /**
+     * Reads the index of the cache file. Entries are appended as assets are
+     * converted, so later entries replace earlier ones with the same key; if
+     * any were replaced, the file is rewritten without them.
+     */
+    private static Map<List<Object>, StoreEntry> openStore() {
+        Map<List<Object>, StoreEntry> index = Maps.newHashMap();
+        if (!STORE_FILE.exists())
+            return index;
+        RandomAccessFile file = null;
+        int stale = 0;
+        try {
+            file = new RandomAccessFile(STORE_FILE, "r");
+            if (file.length() < 8 || file.readInt() != STORE_MAGIC || file.readInt() != STORE_VERSION)
+                return index;
+            while (file.getFilePointer() < file.length()) {
+                String path = file.readUTF();
+                IconScale scale = IconScale.values()[file.readByte()];
+                long modified = file.readLong();
+                int length = file.readInt();
+                if (index.put(Arrays.<Object> asList(path, scale), new StoreEntry(file.getFilePointer(), modified,
+                        length)) != null)
+                    ++stale;
+                file.seek(file.getFilePointer() + length);
+            }
+        } catch (Exception ex) {
+            Messaging.log("The asset cache is corrupt, rebuilding.");
+            index.clear();
+            STORE_FILE.delete();
+            return index;
+        } finally {
+            closeQuietly(file);
+        }
+        if (stale > 0)
+            compact(index);
+        return index;
+    }
+
+    private static byte[] readStored(StoreEntry entry) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(STORE_FILE, "r");
+        try {
+            byte[] data = new byte[entry.length];
+            file.seek(entry.offset);
+            file.readFully(data);
+            return data;
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image, IconScale scale) {
+        BufferedImage resized = new BufferedImage(scale.getWidth(), scale.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, scale.getWidth(), scale.getHeight(), null);
+        graphics.dispose();
+        return resized;
+    }
+
+    private static StoreEntry writeStored(List<Object> key, long modified, byte[] data) throws IOException {
+        boolean created = !STORE_FILE.exists();
+        if (created)
+            STORE_FILE.getParentFile().mkdirs();
+        RandomAccessFile file = new RandomAccessFile(STORE_FILE, "rw");
+        try {
+            if (created || file.length() == 0) {
+                file.writeInt(STORE_MAGIC);
+                file.writeInt(STORE_VERSION);
+            }
+            file.seek(file.length());
+            file.writeUTF((String) key.get(0));
+            file.writeByte(((IconScale) key.get(1)).ordinal());
+            file.writeLong(modified);
+            file.writeInt(data.length);
+            long offset = file.getFilePointer();
+            file.write(data);
+            return new StoreEntry(offset, modified, data.length);
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    private static class StoreEntry {
+        private final int length;
+        private final long modified;
+        private final long offset;
+
+        private StoreEntry(long offset, long modified, int length) {
+            this.offset = offset;
+            this.modified = modified;
+            this.length = length;
+        }
+    }
+
+    private static final File STORE_FILE = new File("plugins/MapOS/data/assets.dat");
+    private static final int STORE_MAGIC = 0x4D415053, STORE_VERSION = 1;
+}
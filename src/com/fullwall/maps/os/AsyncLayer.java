@@ -0,0 +1,139 @@
+package com.fullwall.maps.os;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+import org.bukkit.map.MapCanvas;
+
+import com.fullwall.maps.applications.ConcurrentRenderer;
+import com.fullwall.maps.interfaces.Screen;
+import com.fullwall.maps.utils.Messaging;
+
+/**
+ * The triple-buffered layer of a {@link ConcurrentRenderer}. The renderer
+ * draws into a back buffer owned by a worker thread. Completed frames are
+ * exchanged atomically into the middle slot, and the main thread swaps its
+ * front buffer with the middle slot whenever a fresh frame is waiting there,
+ * so neither side ever blocks the other.
+ *
+ * @author fullwall
+ */
+class AsyncLayer {
+    private Frame back;
+    private final ScreenCanvas canvas;
+    private Frame front;
+    private int order;
+    private final AtomicReference<Frame> ready;
+    private final ConcurrentRenderer renderer;
+    private final AtomicBoolean rendering = new AtomicBoolean();
+    private final DamageRegion scratch;
+    private Screen screen;
+    private MapCanvas target;
+    private final Runnable task = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                back.layer.clear(scratch);
+                scratch.clear();
+                canvas.beginLayer(target, back.layer);
+                renderer.render(screen, canvas);
+                back.fresh = true;
+                back = ready.getAndSet(back);
+            } catch (Throwable ex) {
+                Messaging.log(Level.SEVERE, "Error rendering " + renderer.getClass().getName()
+                        + " off the main thread, dropping its frame.", ex);
+            } finally {
+                rendering.set(false);
+            }
+        }
+    };
+
+    AsyncLayer(ConcurrentRenderer renderer, int width, int height) {
+        this.renderer = renderer;
+        this.front = new Frame(new Layer(renderer, width, height));
+        this.ready = new AtomicReference<Frame>(new Frame(new Layer(renderer, width, height)));
+        this.back = new Frame(new Layer(renderer, width, height));
+        this.scratch = new DamageRegion(width, height);
+        this.canvas = new ScreenCanvas(new byte[width * height], null, null, width, height);
+    }
+
+    /**
+     * Clears the front buffer, adding the area it covered to the given damage
+     * region. The next completed frame replaces it as usual.
+     */
+    void clear(DamageRegion damage) {
+        front.layer.clear(damage);
+    }
+
+    /**
+     * Returns the layer holding the most recently completed frame.
+     */
+    Layer getFront() {
+        return front.layer;
+    }
+
+    /**
+     * Returns the position of this layer in the screen's composition order.
+     */
+    int getOrder() {
+        return order;
+    }
+
+    ConcurrentRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Returns whether a completed frame is waiting to be swapped in.
+     */
+    boolean hasFrame() {
+        return ready.get().fresh;
+    }
+
+    void setOrder(int order) {
+        this.order = order;
+    }
+
+    /**
+     * Schedules a render of the next frame, unless one is already in
+     * progress.
+     */
+    void submit(Screen screen, MapCanvas target) {
+        if (!rendering.compareAndSet(false, true))
+            return;
+        this.screen = screen;
+        this.target = target;
+        try {
+            Workers.get().execute(task);
+        } catch (RejectedExecutionException ex) {
+            // the plugin is being disabled.
+            rendering.set(false);
+        }
+    }
+
+    /**
+     * Swaps in the most recently completed frame, if there is one, adding the
+     * area covered by the old and new frames to the given damage region.
+     * Returns whether the front buffer changed.
+     */
+    boolean swap(DamageRegion damage) {
+        if (!ready.get().fresh)
+            return false;
+        damage.add(front.layer.getCoverage());
+        front = ready.getAndSet(front);
+        front.fresh = false;
+        damage.add(front.layer.getCoverage());
+        return true;
+    }
+
+    private static class Frame {
+        private boolean fresh;
+        private final Layer layer;
+
+        private Frame(Layer layer) {
+            this.layer = layer;
+        }
+    }
+}
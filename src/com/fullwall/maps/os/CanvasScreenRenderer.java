@@ -1,81 +1,139 @@
 package com.fullwall.maps.os;
 
-import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.bukkit.craftbukkit.entity.CraftPlayer;
-import org.bukkit.craftbukkit.map.CraftMapCanvas;
 import org.bukkit.craftbukkit.map.CraftMapView;
-import org.bukkit.craftbukkit.map.RenderData;
 import org.bukkit.entity.Player;
 import org.bukkit.map.MapCanvas;
-import org.bukkit.map.MapView;
 
 import com.fullwall.maps.applications.CanvasRenderer;
-import com.fullwall.maps.applications.CanvasRenderer.RenderPriority;
+import com.fullwall.maps.applications.ConcurrentRenderer;
+import com.fullwall.maps.applications.LayeredRenderer;
+import com.fullwall.maps.applications.SharedRenderer;
+import com.fullwall.maps.graphics.Kernels;
 import com.fullwall.maps.interfaces.Screen;
 import com.fullwall.maps.interfaces.ScreenRenderer;
-import com.fullwall.maps.utils.MapPixel;
-import com.fullwall.maps.utils.Point;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multiset;
-import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 
 class CanvasScreenRenderer implements ScreenRenderer {
-    private final RenderData buffer = new RenderData();
+    private AsyncLayer[] async = new AsyncLayer[0];
+    private final Map<ConcurrentRenderer, AsyncLayer> asyncLayers = Maps.newHashMap();
+    private final Set<CanvasRenderer> attached = Sets.newLinkedHashSet();
+    private final byte[] buffer;
     private final Multiset<Class<? extends CanvasRenderer>> classes = HashMultiset.create();
-    private MapView map;
-    private final SetMultimap<CanvasRenderer, MapPixel> pixels = HashMultimap.create();
+    private final int[] columnEnd = new int[SIZE];
+    private final int[] columnStart = new int[SIZE];
+    private final DamageRegion damage;
+    private final byte[] frame;
+    private final ByteBuffer frameView;
+    private final int height;
+    private Layer[] layerOrder = new Layer[0];
+    private final Map<LayeredRenderer, Layer> layers = Maps.newHashMap();
+    private final TileLayout layout;
+    private final PixelOwners owners;
+    private CanvasRenderer[] pipeline = new CanvasRenderer[0];
     private final Player player;
-    private final SetMultimap<RenderPriority, CanvasRenderer> renderers = HashMultimap.create();
+    private final FrameScheduler scheduler;
+    private final ScreenCanvas screenCanvas;
+    private SharedRenderer[] shared = new SharedRenderer[0];
+    private Layer[] stages = new Layer[0];
+    private final Tile[] tiles;
+    private final int width;
 
-    CanvasScreenRenderer(Player player, MapView map) {
+    CanvasScreenRenderer(Player player, TileLayout layout, FrameScheduler scheduler) {
         this.player = player;
-        this.map = map;
+        this.layout = layout;
+        this.scheduler = scheduler;
+        this.width = layout.getWidth();
+        this.height = layout.getHeight();
+        this.buffer = new byte[width * height];
+        this.frame = new byte[width * height];
+        this.frameView = Kernels.view(frame);
+        this.damage = new DamageRegion(width, height);
+        this.owners = new PixelOwners(width, height);
+        this.screenCanvas = new ScreenCanvas(buffer, owners, damage, width, height);
+        this.tiles = new Tile[layout.getTileCount()];
+        for (int i = 0; i < tiles.length; ++i) {
+            tiles[i] = new Tile(i % layout.getColumns() * SIZE, i / layout.getColumns() * SIZE);
+        }
+        Arrays.fill(columnStart, SIZE);
+        Arrays.fill(columnEnd, -1);
     }
 
     @Override
     public void attach(CanvasRenderer toAttach) {
-        this.renderers.put(toAttach.getPriority(), toAttach);
-        classes.add(toAttach.getClass());
+        Preconditions.checkNotNull(toAttach, "renderer can't be null");
+        if (internalAttach(toAttach))
+            rebuildPipeline();
     }
 
     @Override
     public void attachAll(Collection<CanvasRenderer> toAttach) {
+        boolean changed = false;
         for (CanvasRenderer renderer : toAttach) {
-            attach(renderer);
+            Preconditions.checkNotNull(renderer, "renderer can't be null");
+            changed |= internalAttach(renderer);
         }
+        if (changed)
+            rebuildPipeline();
     }
 
     @Override
     public void clearAttached() {
-        this.renderers.clear();
+        this.attached.clear();
+        this.pipeline = new CanvasRenderer[0];
         this.classes.clear();
-        this.pixels.clear();
+        this.owners.clear();
+        for (Layer layer : layerOrder) {
+            damage.add(layer.getCoverage());
+        }
+        this.layers.clear();
+        this.asyncLayers.clear();
+        this.layerOrder = this.stages = new Layer[0];
+        this.async = new AsyncLayer[0];
+        this.shared = new SharedRenderer[0];
     }
 
     @Override
     public void clearPixels(CanvasRenderer renderer) {
-        if (!pixels.containsKey(renderer))
-            return;
-        for (MapPixel pixel : pixels.removeAll(renderer)) {
-            Point point = pixel.getPoint();
-            buffer.buffer[point.getY() * 128 + point.getX()] = 0;
+        Layer layer = layers.get(renderer);
+        AsyncLayer asyncLayer = asyncLayers.get(renderer);
+        if (asyncLayer != null) {
+            asyncLayer.clear(damage);
+        } else if (layer != null && renderer instanceof SharedRenderer) {
+            // shared frames are never modified; show the empty frame instead.
+            damage.add(layer.getCoverage());
+            layers.put((SharedRenderer) renderer, SharedFrames.empty(width, height));
+            rebuildPipeline();
+        } else if (layer != null) {
+            layer.clear(damage);
+        } else {
+            owners.clear(renderer, buffer, (byte) 0, damage);
         }
     }
 
     @Override
     public void clearScreen() {
-        Arrays.fill(buffer.buffer, (byte) 0);
+        Arrays.fill(buffer, (byte) 0);
+        damage.addAll();
     }
 
     @Override
     public boolean contains(CanvasRenderer attachment) {
         Preconditions.checkNotNull(attachment, "renderer can't be null");
-        return this.renderers.containsEntry(attachment.getPriority(), attachment);
+        return this.attached.contains(attachment);
     }
 
     @Override
@@ -83,118 +141,319 @@ class CanvasScreenRenderer implements ScreenRenderer {
         return classes.contains(attachmentClass);
     }
 
-    private void directRender(Screen screen, CanvasRenderer renderer, MapCanvas canvas) {
-        setBase(canvas, buffer.buffer);
-        renderer.render(screen, canvas);
-        byte[] canvasBuffer = getBuffer(canvas);
-        for (int i = 0; i < canvasBuffer.length; ++i) {
-            if (canvasBuffer[i] >= 0) {
-                MapPixel pixel = new MapPixel(new Point(i % 128, i / 128), canvasBuffer[i]);
-                if (pixels.containsValue(pixel))
-                    pixels.values().remove(pixel);
-                pixels.put(renderer, pixel);
-                buffer.buffer[i] = canvasBuffer[i];
+    /**
+     * Composes the damaged spans of the screen buffer and every layer into the
+     * frame buffer.
+     */
+    private void compose() {
+        byte[] base = buffer;
+        Layer[] layerOrder = this.layerOrder;
+        for (int y = damage.getMinY(); y <= damage.getMaxY(); ++y) {
+            int start = damage.getRowStart(y), end = damage.getRowEnd(y);
+            if (start >= end)
+                continue;
+            int offset = y * width;
+            System.arraycopy(base, offset + start, frame, offset + start, end - start);
+            for (int i = 0; i < layerOrder.length; ++i) {
+                DamageRegion coverage = layerOrder[i].getCoverage();
+                int from = Math.max(start, coverage.getRowStart(y)), to = Math.min(end, coverage.getRowEnd(y));
+                if (from < to)
+                    Kernels.blendOver(layerOrder[i].getView(), frameView, offset + from, to - from);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending spans of a tile from the frame into its canvas,
+     * skipping pixels the player was already sent, and flags only the changed
+     * column spans so that the server's map packets carry the smallest
+     * possible update.
+     */
+    private void deliver(Tile tile) {
+        DamageRegion pending = tile.pending;
+        if (pending.isEmpty())
+            return;
+        byte[] delivered = tile.target.getBuffer();
+        int minX = SIZE, maxX = -1;
+        for (int y = pending.getMinY(); y <= pending.getMaxY(); ++y) {
+            int offset = y * SIZE, source = (tile.originY + y) * width + tile.originX;
+            for (int x = pending.getRowStart(y), end = pending.getRowEnd(y); x < end; ++x) {
+                if (frame[source + x] == delivered[offset + x])
+                    continue;
+                delivered[offset + x] = frame[source + x];
+                if (y < columnStart[x])
+                    columnStart[x] = y;
+                columnEnd[x] = y;
+                if (x < minX)
+                    minX = x;
+                if (x > maxX)
+                    maxX = x;
+            }
+        }
+        int columns = 0, sent = 0;
+        for (int x = minX; x <= maxX; ++x) {
+            if (columnEnd[x] < 0)
+                continue;
+            tile.target.markDirty(x, columnStart[x], 1, columnEnd[x] - columnStart[x] + 1);
+            ++columns;
+            sent += columnEnd[x] - columnStart[x] + 1;
+            columnStart[x] = SIZE;
+            columnEnd[x] = -1;
+        }
+        pending.clear();
+        scheduler.recordDelivery(columns, sent);
+    }
+
+    /**
+     * Splits the frame's damage into the pending regions of the tiles it
+     * covers.
+     */
+    private void distribute() {
+        for (Tile tile : tiles) {
+            int endY = Math.min(damage.getMaxY() + 1, tile.originY + SIZE);
+            for (int y = Math.max(damage.getMinY(), tile.originY); y < endY; ++y) {
+                int start = Math.max(damage.getRowStart(y), tile.originX);
+                int end = Math.min(damage.getRowEnd(y), tile.originX + SIZE);
+                if (start < end)
+                    tile.pending.add(start - tile.originX, y - tile.originY, end - start, 1);
             }
         }
-        setBase(canvas, buffer.buffer);
-        Arrays.fill(getBuffer(canvas), (byte) -1);
+    }
+
+    @Override
+    public void flush(MapCanvas canvas) {
+        Tile tile = prepare(canvas);
+        if (tile != null)
+            deliver(tile);
     }
 
     @Override
     public void forceRefresh(boolean rerender) {
-        if (rerender) {
-            ((CraftMapView) map).render((CraftPlayer) player);
+        for (int i = 0; i < tiles.length; ++i) {
+            if (rerender) {
+                // changed columns are flagged and sent by the server as usual.
+                ((CraftMapView) layout.getTile(i)).render((CraftPlayer) player);
+            } else {
+                player.sendMap(layout.getTile(i));
+            }
         }
-        player.sendMap(map);
     }
 
     @Override
-    public byte[] getScreenRaw() {
-        return buffer.buffer;
+    public int getHeight() {
+        return height;
     }
 
-    private void merge(byte[] source, byte[] into) {
-        for (int i = 0; i < source.length; ++i) {
-            if (source[i] >= 0)
-                into[i] = source[i];
-        }
+    @Override
+    public byte[] getScreenRaw() {
+        return buffer;
     }
 
     @Override
-    public void remove(CanvasRenderer previous) {
+    public int getWidth() {
+        return width;
+    }
+
+    private boolean internalAttach(CanvasRenderer toAttach) {
+        if (!attached.add(toAttach))
+            return false;
+        classes.add(toAttach.getClass());
+        if (toAttach instanceof ConcurrentRenderer)
+            asyncLayers.put((ConcurrentRenderer) toAttach, new AsyncLayer((ConcurrentRenderer) toAttach, width,
+                    height));
+        else if (toAttach instanceof SharedRenderer)
+            layers.put((SharedRenderer) toAttach, SharedFrames.empty(width, height));
+        else if (toAttach instanceof LayeredRenderer)
+            layers.put((LayeredRenderer) toAttach, new Layer((LayeredRenderer) toAttach, width, height));
+        return true;
+    }
+
+    private boolean internalRemove(CanvasRenderer previous) {
         Preconditions.checkNotNull(previous, "renderer can't be null");
-        if (!this.renderers.containsKey(previous))
-            return;
-        this.renderers.remove(previous.getPriority(), previous);
+        if (!attached.remove(previous))
+            return false;
         classes.remove(previous.getClass());
+        Layer layer = layers.remove(previous);
+        if (layer != null) {
+            damage.add(layer.getCoverage());
+            return true;
+        }
+        AsyncLayer asyncLayer = asyncLayers.remove(previous);
+        if (asyncLayer != null) {
+            // a render still in progress completes into the discarded buffers.
+            damage.add(asyncLayer.getFront().getCoverage());
+            return true;
+        }
         if (previous.clearPixelsOnRemove())
             clearPixels(previous);
-        else
-            pixels.removeAll(previous);
+        owners.release(previous);
+        return true;
+    }
+
+    @Override
+    public boolean isFramePending() {
+        if (!damage.isEmpty())
+            return true;
+        for (AsyncLayer layer : asyncLayers.values()) {
+            if (layer.hasFrame())
+                return true;
+        }
+        for (CanvasRenderer renderer : pipeline) {
+            if (renderer.isRendering())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void markDamaged(int x, int y, int width, int height) {
+        damage.add(x, y, width, height);
+    }
+
+    /**
+     * Returns the tile shown by the given canvas, or null if it isn't part of
+     * this screen. A fresh canvas holds none of our pixels yet, so its whole
+     * tile is marked as pending.
+     */
+    private Tile prepare(MapCanvas canvas) {
+        int index = layout.indexOf(canvas.getMapView());
+        if (index < 0)
+            return null;
+        Tile tile = tiles[index];
+        if (canvas != tile.canvas) {
+            tile.canvas = canvas;
+            tile.target = RawCanvas.of(canvas);
+            tile.pending.addAll();
+        }
+        return tile;
+    }
+
+    /**
+     * Rebuilds the paint order. Sorting is stable, so renderers within a
+     * layer keep their attachment order.
+     */
+    private void rebuildPipeline() {
+        CanvasRenderer[] sorted = attached.toArray(new CanvasRenderer[attached.size()]);
+        Arrays.sort(sorted, PAINT_ORDER);
+        Layer[] stages = new Layer[sorted.length];
+        AsyncLayer[] async = new AsyncLayer[sorted.length];
+        SharedRenderer[] shared = new SharedRenderer[sorted.length];
+        List<Layer> layerOrder = Lists.newArrayListWithCapacity(layers.size() + asyncLayers.size());
+        for (int i = 0; i < sorted.length; ++i) {
+            stages[i] = layers.get(sorted[i]);
+            async[i] = asyncLayers.get(sorted[i]);
+            if (sorted[i] instanceof SharedRenderer)
+                shared[i] = (SharedRenderer) sorted[i];
+            if (async[i] != null) {
+                async[i].setOrder(layerOrder.size());
+                layerOrder.add(async[i].getFront());
+            } else if (stages[i] != null) {
+                layerOrder.add(stages[i]);
+            }
+        }
+        this.pipeline = sorted;
+        this.stages = stages;
+        this.async = async;
+        this.shared = shared;
+        this.layerOrder = layerOrder.toArray(new Layer[layerOrder.size()]);
+    }
+
+    @Override
+    public void remove(CanvasRenderer previous) {
+        if (internalRemove(previous))
+            rebuildPipeline();
     }
 
     @Override
     public void removeAll(Collection<CanvasRenderer> previous) {
+        boolean changed = false;
         for (CanvasRenderer prev : previous) {
-            remove(prev);
+            changed |= internalRemove(prev);
         }
+        if (changed)
+            rebuildPipeline();
     }
 
     @Override
     public void render(Screen screen, MapCanvas canvas) {
-        if (canvas.getMapView() != this.map)
-            map = canvas.getMapView();
-        Arrays.fill(getBuffer(canvas), (byte) -1);
-        for (RenderPriority priority : RenderPriority.values()) {
-            if (!renderers.containsKey(priority))
+        Tile tile = prepare(canvas);
+        if (tile == null)
+            return;
+        CanvasRenderer[] pipeline = this.pipeline;
+        Layer[] stages = this.stages;
+        AsyncLayer[] async = this.async;
+        SharedRenderer[] shared = this.shared;
+        boolean reorder = false;
+        for (int i = 0; i < pipeline.length; ++i) {
+            CanvasRenderer renderer = pipeline[i];
+            if (async[i] != null) {
+                if (async[i].swap(damage))
+                    layerOrder[async[i].getOrder()] = async[i].getFront();
+                if (renderer.isRendering())
+                    async[i].submit(screen, canvas);
+                continue;
+            }
+            if (!renderer.isRendering())
+                continue;
+            Layer layer = stages[i];
+            if (shared[i] != null) {
+                Layer frame = SharedFrames.acquire(shared[i], screen, canvas, width, height);
+                if (frame != layer) {
+                    damage.add(layer.getCoverage());
+                    damage.add(frame.getCoverage());
+                    layers.put(shared[i], frame);
+                    reorder = true;
+                }
                 continue;
-            for (CanvasRenderer renderer : renderers.get(priority)) {
-                if (!renderer.isRendering())
-                    continue;
-                directRender(screen, renderer, canvas);
             }
+            if (layer == null) {
+                screenCanvas.begin(canvas, owners.idFor(renderer));
+                renderer.render(screen, screenCanvas);
+                continue;
+            }
+            layer.clear(damage);
+            screenCanvas.beginLayer(canvas, layer);
+            renderer.render(screen, screenCanvas);
+            damage.add(layer.getCoverage());
         }
-        merge(buffer.buffer, getBuffer(canvas));
+        if (reorder)
+            rebuildPipeline();
+        if (!damage.isEmpty()) {
+            compose();
+            distribute();
+            damage.clear();
+        }
+        deliver(tile);
     }
 
     @Override
     public void setScreenRaw(byte[] buffer) {
-        if (buffer.length != this.buffer.buffer.length)
-            throw new IllegalArgumentException("expected array length of " + this.buffer.buffer.length
+        if (buffer.length != this.buffer.length)
+            throw new IllegalArgumentException("expected array length of " + this.buffer.length
                     + ", got " + buffer.length);
-        for (int i = 0; i < buffer.length; ++i)
-            this.buffer.buffer[i] = buffer[i];
+        System.arraycopy(buffer, 0, this.buffer, 0, buffer.length);
+        damage.addAll();
     }
 
-    private static Method getBufferMethod;
-
-    private static Method setBaseMethod;
+    private static class Tile {
+        private MapCanvas canvas;
+        private final int originX;
+        private final int originY;
+        private final DamageRegion pending = new DamageRegion(SIZE, SIZE);
+        private RawCanvas target;
 
-    private static byte[] getBuffer(MapCanvas canvas) {
-        try {
-            return (byte[]) getBufferMethod.invoke(canvas);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            return null;
+        private Tile(int originX, int originY) {
+            this.originX = originX;
+            this.originY = originY;
         }
     }
 
-    private static void setBase(MapCanvas canvas, byte[] buffer) {
-        try {
-            setBaseMethod.invoke(canvas, buffer);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
-    }
+    private static final int SIZE = Constants.MapSize;
 
-    static {
-        try {
-            setBaseMethod = CraftMapCanvas.class.getDeclaredMethod("setBase", byte[].class);
-            setBaseMethod.setAccessible(true);
-            getBufferMethod = CraftMapCanvas.class.getDeclaredMethod("getBuffer", (Class<?>[]) null);
-            getBufferMethod.setAccessible(true);
-        } catch (Exception ex) {
-            ex.printStackTrace();
+    private static final Comparator<CanvasRenderer> PAINT_ORDER = new Comparator<CanvasRenderer>() {
+        @Override
+        public int compare(CanvasRenderer o1, CanvasRenderer o2) {
+            return o1.getPriority().getLayer() - o2.getPriority().getLayer();
         }
-    }
+    };
 }
@@ -5,5 +5,6 @@ import org.bukkit.map.MinecraftFont;
 
 public class Constants {
     public static final MapFont Font = MinecraftFont.Font;
-    public static final int MaxMapCoordinate = 127;
+    public static final int MapSize = 128;
+    public static final int MaxMapCoordinate = MapSize - 1;
 }
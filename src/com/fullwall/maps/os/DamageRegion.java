@@ -0,0 +1,140 @@
+package com.fullwall.maps.os;
+
+import java.util.Arrays;
+
+/**
+ * A per-frame damage region, kept as one merged horizontal span per row. Spans
+ * only ever grow until {@link #clear()} is called, so the region is a
+ * conservative cover of every pixel that was changed.
+ *
+ * @author fullwall
+ */
+class DamageRegion {
+    private final int height;
+    private int maxY = -1;
+    private int minY;
+    private final int[] rowEnd;
+    private final int[] rowStart;
+    private final int width;
+
+    DamageRegion(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rowStart = new int[height];
+        this.rowEnd = new int[height];
+        this.minY = height;
+        Arrays.fill(rowStart, width);
+    }
+
+    /**
+     * Damages the given rectangle, clipped to the region's bounds.
+     */
+    void add(int x, int y, int width, int height) {
+        int startX = Math.max(x, 0), endX = Math.min(x + width, this.width);
+        int startY = Math.max(y, 0), endY = Math.min(y + height, this.height);
+        if (startX >= endX || startY >= endY)
+            return;
+        for (int row = startY; row < endY; ++row) {
+            if (startX < rowStart[row])
+                rowStart[row] = startX;
+            if (endX > rowEnd[row])
+                rowEnd[row] = endX;
+        }
+        if (startY < minY)
+            minY = startY;
+        if (endY - 1 > maxY)
+            maxY = endY - 1;
+    }
+
+    /**
+     * Adds every span of another region of the same size to this one.
+     */
+    void add(DamageRegion other) {
+        for (int row = other.minY; row <= other.maxY; ++row) {
+            if (other.rowStart[row] >= other.rowEnd[row])
+                continue;
+            if (other.rowStart[row] < rowStart[row])
+                rowStart[row] = other.rowStart[row];
+            if (other.rowEnd[row] > rowEnd[row])
+                rowEnd[row] = other.rowEnd[row];
+        }
+        if (other.minY < minY)
+            minY = other.minY;
+        if (other.maxY > maxY)
+            maxY = other.maxY;
+    }
+
+    /**
+     * Damages the entire region.
+     */
+    void addAll() {
+        add(0, 0, width, height);
+    }
+
+    /**
+     * Damages the pixel at the given row-major index.
+     */
+    void addIndex(int index) {
+        addPixel(index % width, index / width);
+    }
+
+    /**
+     * Damages a single pixel, which must lie within the region.
+     */
+    void addPixel(int x, int y) {
+        if (x < rowStart[y])
+            rowStart[y] = x;
+        if (x >= rowEnd[y])
+            rowEnd[y] = x + 1;
+        if (y < minY)
+            minY = y;
+        if (y > maxY)
+            maxY = y;
+    }
+
+    void clear() {
+        for (int row = minY; row <= maxY; ++row) {
+            rowStart[row] = width;
+            rowEnd[row] = 0;
+        }
+        minY = height;
+        maxY = -1;
+    }
+
+    /**
+     * Returns the last damaged row, or -1 if the region is empty.
+     */
+    int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Returns the first damaged row, or the region height if it is empty.
+     */
+    int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Returns the exclusive end of the damaged span in the given row.
+     */
+    int getRowEnd(int y) {
+        return rowEnd[y];
+    }
+
+    /**
+     * Returns the inclusive start of the damaged span in the given row. The
+     * row is clean if this is not less than {@link #getRowEnd(int)}.
+     */
+    int getRowStart(int y) {
+        return rowStart[y];
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    boolean isEmpty() {
+        return maxY < minY;
+    }
+}
@@ -11,6 +11,7 @@ public class ForwardingMapRenderer extends MapRenderer {
     private final MapController controller;
 
     public ForwardingMapRenderer(MapController controller) {
+        super(true); // each player needs their own canvas to keep its contents.
         this.controller = controller;
     }
 
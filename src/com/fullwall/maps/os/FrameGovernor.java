@@ -0,0 +1,93 @@
+package com.fullwall.maps.os;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Watches main-thread tick time and the time spent rendering screens, and
+ * throttles background and idle screens when the server falls behind. One
+ * governor is shared by every {@link FrameScheduler}.
+ *
+ * Pressure is re-evaluated once a second. Each level of pressure halves the
+ * frame rate of throttled screens; screens with recent input are never
+ * throttled.
+ *
+ * @author fullwall
+ */
+public class FrameGovernor implements Runnable {
+    private long lastTick;
+    private int pressure;
+    private long renderNanos;
+    private double renderTime;
+    private int taskId = -1;
+    private double tickTime = TICK_BUDGET;
+    private int ticks;
+
+    /**
+     * Returns the smoothed time, in milliseconds, spent rendering screens per
+     * tick.
+     */
+    public double getRenderTime() {
+        return renderTime;
+    }
+
+    /**
+     * Returns the factor that the frame interval of throttled screens is
+     * multiplied by.
+     */
+    public int getThrottle() {
+        return 1 << pressure;
+    }
+
+    /**
+     * Returns the smoothed main-thread tick time, in milliseconds.
+     */
+    public double getTickTime() {
+        return tickTime;
+    }
+
+    void recordRender(long nanos) {
+        renderNanos += nanos;
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        if (lastTick != 0) {
+            tickTime += ((now - lastTick) / 1000000D - tickTime) * SMOOTHING;
+            renderTime += (renderNanos / 1000000D - renderTime) * SMOOTHING;
+        }
+        lastTick = now;
+        renderNanos = 0;
+        if (++ticks < EVALUATION_PERIOD)
+            return;
+        ticks = 0;
+        if (tickTime > TICK_BUDGET * 1.05 || renderTime > RENDER_BUDGET) {
+            if (pressure < MAX_PRESSURE)
+                ++pressure;
+        } else if (pressure > 0 && tickTime < TICK_BUDGET * 1.02 && renderTime < RENDER_BUDGET / 2) {
+            --pressure;
+        }
+    }
+
+    /**
+     * Starts measuring tick times using the server scheduler.
+     */
+    public void start(Plugin plugin) {
+        if (taskId != -1)
+            return;
+        lastTick = 0;
+        taskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(plugin, this, 1, 1);
+    }
+
+    public void stop() {
+        if (taskId == -1)
+            return;
+        Bukkit.getScheduler().cancelTask(taskId);
+        taskId = -1;
+        pressure = 0;
+    }
+
+    private static final int EVALUATION_PERIOD = 20, MAX_PRESSURE = 3;
+    private static final double RENDER_BUDGET = 5, SMOOTHING = 0.1, TICK_BUDGET = 50;
+}
@@ -0,0 +1,234 @@
+package com.fullwall.maps.os;
+
+import com.fullwall.maps.interfaces.Loadable;
+import com.fullwall.maps.interfaces.Saveable;
+import com.fullwall.maps.storage.DataKey;
+
+/**
+ * Decides whether a screen needs to produce a frame when the server asks it to
+ * render. Frames are produced when something is pending - a renderer that
+ * wants to draw, a running animation, damaged pixels or an explicit request
+ * such as a cursor move - and skipped otherwise, which leaves the previously
+ * delivered frame on the player's map.
+ *
+ * Pending frames are capped at a target frame rate, set per system and
+ * optionally overridden by the running application. When the
+ * {@link FrameGovernor} reports that the server is under pressure, background
+ * and idle screens are throttled further. Requested frames are always produced
+ * immediately so that input stays responsive.
+ *
+ * Also keeps an estimate of the map data that produced frames cost to send,
+ * compared to sending the full image every frame. Servers send changed map
+ * pixels one column per packet, so the estimate counts the packet and column
+ * header overhead of every dirty column as well as its pixels.
+ *
+ * @author fullwall
+ */
+public class FrameScheduler implements Loadable, Saveable {
+    private int applicationFrameRate;
+    private boolean background;
+    private long bytesAvoided;
+    private long bytesSent;
+    private long deferred;
+    private final FrameGovernor governor;
+    private long lastFrame;
+    private long lastInput;
+    private boolean pending;
+    private long produced;
+    private boolean requested = true;
+    private long skipped;
+    private int targetFrameRate = DEFAULT_FRAME_RATE;
+
+    public FrameScheduler(FrameGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Returns the frame rate currently in effect, taking the application
+     * override into account.
+     */
+    public int getActiveFrameRate() {
+        return applicationFrameRate > 0 ? Math.min(applicationFrameRate, MAX_FRAME_RATE) : targetFrameRate;
+    }
+
+    /**
+     * Returns the estimated number of bytes of map packets that did not need
+     * to be sent, compared to sending the full image every frame.
+     */
+    public long getBytesAvoided() {
+        return bytesAvoided;
+    }
+
+    /**
+     * Returns the estimated number of bytes of map packets flagged to be
+     * sent, including per-column overhead.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the number of pending frames that were postponed to stay within
+     * the frame rate cap, counted once per frame however many maps the screen
+     * spans.
+     */
+    public long getFramesDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Returns the number of frames produced since the scheduler was created.
+     */
+    public long getFramesProduced() {
+        return produced;
+    }
+
+    /**
+     * Returns the number of screen frames that were skipped because no frame
+     * was pending, counted once per frame however many maps the screen spans.
+     */
+    public long getFramesSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public String getRootName() {
+        return "frames";
+    }
+
+    /**
+     * Returns the frame rate set for this system.
+     */
+    public int getTargetFrameRate() {
+        return targetFrameRate;
+    }
+
+    /**
+     * Returns whether the screen is currently being throttled by the governor.
+     */
+    public boolean isThrottled() {
+        return governor.getThrottle() > 1
+                && (background || System.currentTimeMillis() - lastInput > IDLE_THRESHOLD);
+    }
+
+    @Override
+    public void load(DataKey root, boolean empty) {
+        // the state holder passes whether the key existed as empty, so the
+        // flag is ignored; a missing value falls back to the default.
+        setTargetFrameRate(root.getInt("targetFrameRate", DEFAULT_FRAME_RATE));
+    }
+
+    /**
+     * Marks the screen as having work pending, such as a new animation frame,
+     * without counting as input. The frame is produced within the frame rate
+     * cap and any throttling.
+     */
+    void markPending() {
+        pending = true;
+    }
+
+    /**
+     * Called for every render request. Returns whether a frame should be
+     * produced, given whether the screen itself has pending work. Screens
+     * tiled across several maps are asked once per map, so only requests
+     * marked as <tt>counted</tt> - one per screen frame - are counted as
+     * skipped or deferred.
+     */
+    boolean nextFrame(boolean pending, boolean counted) {
+        long now = System.currentTimeMillis();
+        if (requested) {
+            requested = false;
+            lastInput = now;
+            return produce(now);
+        }
+        if (!pending && !this.pending) {
+            if (counted)
+                ++skipped;
+            return false;
+        }
+        long interval = 1000 / getActiveFrameRate();
+        if (isThrottled())
+            interval *= governor.getThrottle();
+        if (now - lastFrame + TOLERANCE < interval) {
+            if (counted)
+                ++deferred;
+            return false;
+        }
+        return produce(now);
+    }
+
+    private boolean produce(long now) {
+        pending = false;
+        lastFrame = now;
+        ++produced;
+        return true;
+    }
+
+    /**
+     * Records a delivered frame that flagged the given number of columns,
+     * spanning the given number of pixels in total, as dirty.
+     */
+    void recordDelivery(int columns, int pixels) {
+        long bytes = (long) columns * COLUMN_OVERHEAD + pixels;
+        bytesSent += bytes;
+        bytesAvoided += FULL_FRAME_BYTES - bytes;
+    }
+
+    /**
+     * Records the time taken to produce a frame.
+     */
+    void recordRender(long nanos) {
+        governor.recordRender(nanos);
+    }
+
+    /**
+     * Requests that the next render call produces a frame, bypassing the
+     * frame rate cap. Used for input, and resets the idle timer.
+     */
+    public void requestFrame() {
+        requested = true;
+    }
+
+    @Override
+    public void save(DataKey root) {
+        root.setInt("targetFrameRate", targetFrameRate);
+    }
+
+    /**
+     * Sets the frame rate requested by the running application, or 0 to use
+     * the frame rate of the system.
+     */
+    void setApplicationFrameRate(int frameRate) {
+        this.applicationFrameRate = Math.max(frameRate, 0);
+    }
+
+    /**
+     * Sets whether the screen is in the background, such as while its
+     * application is paused. Background screens are throttled first when the
+     * server is under pressure.
+     */
+    void setBackground(boolean background) {
+        this.background = background;
+    }
+
+    /**
+     * Sets the target frame rate of this system, clamped between 1 and
+     * {@link #MAX_FRAME_RATE}.
+     */
+    public void setTargetFrameRate(int frameRate) {
+        this.targetFrameRate = Math.max(1, Math.min(frameRate, MAX_FRAME_RATE));
+    }
+
+    // each column is its own packet: a packet id, item id, map id and
+    // length, then the update type, column and starting row.
+    private static final int COLUMN_OVERHEAD = 1 + 2 + 2 + 2 + 3;
+
+    private static final int DEFAULT_FRAME_RATE = 20, IDLE_THRESHOLD = 5000, TOLERANCE = 25;
+
+    private static final long FULL_FRAME_BYTES = Constants.MapSize * (COLUMN_OVERHEAD + Constants.MapSize);
+
+    /**
+     * Maps are rendered at most once per server tick.
+     */
+    public static final int MAX_FRAME_RATE = 20;
+}
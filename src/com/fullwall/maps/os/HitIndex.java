@@ -0,0 +1,149 @@
+package com.fullwall.maps.os;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fullwall.maps.attachments.Clickable;
+import com.fullwall.maps.attachments.ClickableArea;
+import com.fullwall.maps.attachments.MouseListener;
+import com.fullwall.maps.attachments.builtin.ClickableShape;
+import com.fullwall.maps.attachments.builtin.EmptyClickableArea;
+import com.fullwall.maps.shapes.Rectangle;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A uniform grid over the cursor space of a screen, holding in each cell the
+ * {@link Clickable}s whose bounds overlap it. Finding the listeners that a
+ * mouse event may concern is then a single cell lookup, however many buttons
+ * are attached. Listeners that aren't clickable, or whose area has no known
+ * bounds, are candidates for every event.
+ *
+ * Areas are indexed when their listener is added, so a listener whose area
+ * changes must be removed and added again. Candidates are returned in the
+ * order their listeners were added. Removing a listener is linear in the
+ * number of listeners sharing its cells, which is small for the buttons and
+ * menus that screens attach.
+ *
+ * @author fullwall
+ */
+class HitIndex {
+    private final List<Entry> always = Lists.newArrayList();
+    private final List<Entry>[] cells;
+    private final int columns;
+    private final Map<MouseListener, Entry> entries = Maps.newHashMap();
+    private final int rows;
+    private long sequence;
+
+    @SuppressWarnings("unchecked")
+    HitIndex(TileLayout layout) {
+        this.columns = cellOf(layout.getMaxCursorX()) + 1;
+        this.rows = cellOf(layout.getMaxCursorY()) + 1;
+        this.cells = new List[columns * rows];
+    }
+
+    /**
+     * Adds a listener to the index.
+     */
+    void add(MouseListener listener) {
+        if (entries.containsKey(listener))
+            return;
+        Entry entry = new Entry(listener, sequence++);
+        entries.put(listener, entry);
+        if (!(listener instanceof Clickable)) {
+            always.add(entry);
+            return;
+        }
+        ClickableArea area = ((Clickable) listener).getClickableArea();
+        if (area instanceof EmptyClickableArea)
+            return;
+        if (!(area instanceof ClickableShape)) {
+            always.add(entry);
+            return;
+        }
+        Rectangle bounds = ((ClickableShape) area).getShape().getBounds();
+        if (bounds.getWidth() <= 0 || bounds.getHeight() <= 0)
+            return;
+        entry.minColumn = clamp(cellOf(bounds.getX()), columns);
+        entry.maxColumn = clamp(cellOf(bounds.getX() + bounds.getWidth() - 1), columns);
+        entry.minRow = clamp(cellOf(bounds.getY()), rows);
+        entry.maxRow = clamp(cellOf(bounds.getY() + bounds.getHeight() - 1), rows);
+        for (int row = entry.minRow; row <= entry.maxRow; ++row) {
+            for (int column = entry.minColumn; column <= entry.maxColumn; ++column) {
+                int cell = row * columns + column;
+                if (cells[cell] == null)
+                    cells[cell] = Lists.newArrayListWithCapacity(4);
+                // sequences only grow, so appending keeps the cell in order.
+                cells[cell].add(entry);
+            }
+        }
+    }
+
+    void clear() {
+        always.clear();
+        entries.clear();
+        for (int i = 0; i < cells.length; ++i) {
+            cells[i] = null;
+        }
+    }
+
+    /**
+     * Adds the listeners that an event at the given cursor position may
+     * concern to the given list, in the order they were added.
+     */
+    void collect(int x, int y, List<MouseListener> candidates) {
+        int column = cellOf(x), row = cellOf(y);
+        List<Entry> cell = column < 0 || column >= columns || row < 0 || row >= rows ? null : cells[row
+                * columns + column];
+        int i = 0, j = 0, cellSize = cell == null ? 0 : cell.size();
+        while (i < always.size() || j < cellSize) {
+            if (j == cellSize || (i < always.size() && always.get(i).sequence < cell.get(j).sequence)) {
+                candidates.add(always.get(i++).listener);
+            } else {
+                candidates.add(cell.get(j++).listener);
+            }
+        }
+    }
+
+    /**
+     * Removes a listener from the index.
+     */
+    void remove(MouseListener listener) {
+        Entry entry = entries.remove(listener);
+        if (entry == null)
+            return;
+        always.remove(entry);
+        for (int row = entry.minRow; row <= entry.maxRow; ++row) {
+            for (int column = entry.minColumn; column <= entry.maxColumn; ++column) {
+                cells[row * columns + column].remove(entry);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final MouseListener listener;
+        private int maxColumn = -1;
+        private int maxRow = -1;
+        private int minColumn;
+        private int minRow;
+        private final long sequence;
+
+        private Entry(MouseListener listener, long sequence) {
+            this.listener = listener;
+            this.sequence = sequence;
+        }
+    }
+
+    // cells are 16 cursor units square.
+    private static final int CELL_SHIFT = 4;
+
+    private static final int ORIGIN = -128;
+
+    private static int cellOf(int pos) {
+        return (pos - ORIGIN) >> CELL_SHIFT;
+    }
+
+    private static int clamp(int cell, int cells) {
+        return cell < 0 ? 0 : cell >= cells ? cells - 1 : cell;
+    }
+}
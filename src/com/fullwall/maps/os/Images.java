@@ -7,12 +7,11 @@ import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
-import org.bukkit.map.MapPalette;
-
 import com.fullwall.maps.applications.ApplicationIcon;
 import com.fullwall.maps.applications.ApplicationIcon.IconScale;
 import com.fullwall.maps.utils.MapColour;
 import com.fullwall.maps.utils.Messaging;
+import com.fullwall.maps.utils.Palette;
 
 public class Images {
     public static final ApplicationIcon MissingApp;
@@ -25,7 +24,7 @@ public class Images {
     public static void loadImage(byte[] image, File src) {
         try {
             BufferedImage img = ImageIO.read(src);
-            System.arraycopy(MapPalette.imageToBytes(img), 0, image, 0, image.length);
+            System.arraycopy(Palette.convert(img), 0, image, 0, image.length);
         } catch (IOException ex) {
             Arrays.fill(image, MapColour.White.colour());
             Messaging.log("Unable to load " + src.getName() + ".");
@@ -46,8 +45,7 @@ public class Images {
     }
 
     static {
-        byte[] image = new byte[IconScale.Layout.getArrayLength()];
-        loadImage(image, new File("plugins/MapPlugin/images/missing.png"), IconScale.Layout);
-        MissingApp = new ApplicationIcon("Missing", IconScale.Layout, image);
+        MissingApp = new ApplicationIcon("Missing", IconScale.Layout, AssetCache.get(new File(
+                "plugins/MapPlugin/images/missing.png"), IconScale.Layout));
     }
 }
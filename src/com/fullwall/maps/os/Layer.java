@@ -0,0 +1,65 @@
+package com.fullwall.maps.os;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.fullwall.maps.applications.LayeredRenderer;
+import com.fullwall.maps.graphics.Kernels;
+
+/**
+ * An offscreen buffer for a {@link LayeredRenderer}. Unset pixels are
+ * negative, and the coverage region tracks the spans that may hold opaque
+ * pixels so that clearing and composing never visit the rest of the layer.
+ *
+ * @author fullwall
+ */
+class Layer {
+    private final DamageRegion coverage;
+    private final byte[] pixels;
+    private final LayeredRenderer renderer;
+    private final ByteBuffer view;
+
+    Layer(LayeredRenderer renderer, int width, int height) {
+        this.renderer = renderer;
+        this.pixels = new byte[width * height];
+        this.view = Kernels.view(pixels);
+        this.coverage = new DamageRegion(width, height);
+        Arrays.fill(pixels, TRANSPARENT);
+    }
+
+    /**
+     * Makes the layer fully transparent, adding the area it used to cover to
+     * the given damage region.
+     */
+    void clear(DamageRegion damage) {
+        damage.add(coverage);
+        int width = coverage.getWidth();
+        for (int y = coverage.getMinY(); y <= coverage.getMaxY(); ++y) {
+            int start = coverage.getRowStart(y), end = coverage.getRowEnd(y);
+            if (start < end)
+                Arrays.fill(pixels, y * width + start, y * width + end, TRANSPARENT);
+        }
+        coverage.clear();
+    }
+
+    DamageRegion getCoverage() {
+        return coverage;
+    }
+
+    byte[] getPixels() {
+        return pixels;
+    }
+
+    LayeredRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Returns a view of the pixels for {@link Kernels}.
+     */
+    ByteBuffer getView() {
+        return view;
+    }
+
+    private static final byte TRANSPARENT = -1;
+}
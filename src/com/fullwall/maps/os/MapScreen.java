@@ -1,7 +1,5 @@
 package com.fullwall.maps.os;
 
-import java.util.Arrays;
-
 import org.bukkit.map.MapCanvas;
 import org.bukkit.map.MapCursor;
 import org.bukkit.map.MapCursorCollection;
@@ -17,15 +15,31 @@ import com.fullwall.maps.listeners.PlayerListen.Key;
 import com.fullwall.maps.listeners.PlayerListen.MouseClick;
 import com.fullwall.maps.storage.DataKey;
 
+/**
+ * A screen shown on one map, or on a grid of maps described by a
+ * {@link TileLayout}. Frames are rendered once for the whole screen and each
+ * map is sent only the changes within its own tile. The mouse moves across
+ * every tile and its cursor is shown on whichever map it is over.
+ *
+ * @author fullwall
+ */
 public class MapScreen implements Screen {
-    private final ScreenAttachments attachments = new MapScreenAttachments(this);
+    private final ScreenAttachments attachments;
+    private final MapCanvas[] canvases;
+    private final TileLayout layout;
     private final Mouse mouse = new Mouse();
+    private final FrameScheduler scheduler;
     private final ScreenRenderer screenRenderer;
 
-    MapScreen(ScreenRenderer renderer, StateHolder<?> stateLoader) {
+    MapScreen(ScreenRenderer renderer, FrameScheduler scheduler, AnimationWheel wheel, StateHolder<?> stateLoader,
+            TileLayout layout) {
         stateLoader.addLoader(this);
         stateLoader.addSaver(this);
         screenRenderer = renderer;
+        this.scheduler = scheduler;
+        this.attachments = new MapScreenAttachments(wheel, scheduler, layout);
+        this.layout = layout;
+        this.canvases = new MapCanvas[layout.getTileCount()];
     }
 
     @Override
@@ -39,19 +53,36 @@ public class MapScreen implements Screen {
         if (click == MouseClick.Right && screenRenderer.contains(SpringboardRenderer.class)) {
             mouse.setDown(!mouse.isDown());
         }
+        scheduler.requestFrame();
         this.attachments.processMouseEvent(new MouseClickEvent(mouse, this, click, pressed));
     }
 
     @Override
     public void forwardRender(MapCanvas canvas) {
+        int tile = layout.indexOf(canvas.getMapView());
+        if (tile < 0)
+            return;
+        boolean pending = canvas != canvases[tile] || screenRenderer.isFramePending();
+        canvases[tile] = canvas;
+        // every map of the screen is rendered each tick; count the first.
+        if (scheduler.nextFrame(pending, tile == 0)) {
+            long start = System.nanoTime();
+            this.screenRenderer.render(this, canvas);
+            scheduler.recordRender(System.nanoTime() - start);
+        } else {
+            // other tiles may still have changes from the last frame to send.
+            this.screenRenderer.flush(canvas);
+        }
         MapCursorCollection cursors = canvas.getCursors();
-        if (cursors.size() == 0 || cursors.getCursor(0) != mouse.mouse) {
+        boolean shown = cursors.size() > 0 && cursors.getCursor(0) == mouse.mouse;
+        if (layout.getTileAt(mouse.x, mouse.y) != tile) {
+            if (shown)
+                cursors.removeCursor(mouse.mouse);
+        } else if (!shown) {
             if (cursors.size() > 0)
                 cursors.removeCursor(cursors.getCursor(0));
             cursors.addCursor(mouse.mouse);
         }
-        this.attachments.render(this, canvas);
-        this.screenRenderer.render(this, canvas);
     }
 
     @Override
@@ -77,14 +108,19 @@ public class MapScreen implements Screen {
     @Override
     public void load(DataKey root, boolean empty) {
         if (empty) {
-            Arrays.fill(screenRenderer.getScreenRaw(), (byte) 0);
+            screenRenderer.clearScreen();
             return;
         }
-        mouse.setX((byte) root.getInt("mouseX"));
-        mouse.setY((byte) root.getInt("mouseY"));
+        mouse.setX(root.getInt("mouseX"));
+        mouse.setY(root.getInt("mouseY"));
         mouse.setDown(root.getBoolean("mouseDown"));
         mouse.setVisible(root.getBoolean("mouseVisible"));
-        screenRenderer.setScreenRaw(root.getByteArray("image"));
+        byte[] image = root.getByteArray("image");
+        // the image may have been saved from a screen of a different size.
+        if (image.length == screenRenderer.getScreenRaw().length)
+            screenRenderer.setScreenRaw(image);
+        else
+            screenRenderer.clearScreen();
     }
 
     @Override
@@ -93,8 +129,9 @@ public class MapScreen implements Screen {
             return;
         horizontal *= HORIZONTAL_SENSITIVITY;
         vertical *= vertical < 0 ? VERTICAL_SENSITIVITY_UP : VERTICAL_SENSITIVITY_DOWN;
-        mouse.setX((byte) (mouse.getX() + horizontal));
-        mouse.setY((byte) (mouse.getY() + vertical));
+        mouse.setX(mouse.getX() + horizontal);
+        mouse.setY(mouse.getY() + vertical);
+        scheduler.requestFrame();
         attachments.processMouseEvent(new MouseMoveEvent(this, mouse, horizontal, vertical));
     }
 
@@ -107,20 +144,26 @@ public class MapScreen implements Screen {
         root.setByteArray("image", screenRenderer.getScreenRaw());
     }
 
+    /**
+     * The screen's mouse. Coordinates are in cursor units and span every tile
+     * of the screen; see {@link TileLayout}.
+     */
     public class Mouse {
         private boolean down = true;
         private final MapCursor mouse = new MapCursor((byte) 0, (byte) 0, (byte) 14,
                 MapCursor.Type.WHITE_POINTER.getValue(), true);
+        private int x;
+        private int y;
 
         private Mouse() {
         }
 
-        public byte getX() {
-            return mouse.getX();
+        public int getX() {
+            return x;
         }
 
-        public byte getY() {
-            return mouse.getY();
+        public int getY() {
+            return y;
         }
 
         public boolean isDown() {
@@ -131,8 +174,8 @@ public class MapScreen implements Screen {
             return mouse.isVisible();
         }
 
-        private byte normalise(byte pos) {
-            return pos < -127 ? -127 : pos > 127 ? 127 : pos;
+        private int normalise(int pos, int max) {
+            return pos < -127 ? -127 : pos > max ? max : pos;
         }
 
         public void setDown(boolean down) {
@@ -143,12 +186,22 @@ public class MapScreen implements Screen {
             mouse.setVisible(visible);
         }
 
-        public void setX(byte x) {
-            mouse.setX(normalise(x));
+        public void setX(int x) {
+            this.x = normalise(x, layout.getMaxCursorX());
+            mouse.setX(toTile(this.x));
+        }
+
+        public void setY(int y) {
+            this.y = normalise(y, layout.getMaxCursorY());
+            mouse.setY(toTile(this.y));
         }
 
-        public void setY(byte y) {
-            mouse.setY(normalise(y));
+        /**
+         * Converts a screen coordinate to the cursor coordinate within the
+         * tile it lies on.
+         */
+        private byte toTile(int pos) {
+            return (byte) (pos - (pos + 128) / TileLayout.CURSOR_SPAN * TileLayout.CURSOR_SPAN);
         }
     }
 
@@ -2,6 +2,7 @@ package com.fullwall.maps.os;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.bukkit.map.MapCanvas;
@@ -21,21 +22,27 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 
 class MapScreenAttachments implements ScreenAttachments {
+    private final List<MouseListener> candidates = Lists.newArrayList();
     private final Multiset<Class<? extends ScreenAttachment>> classes = HashMultiset.create();
+    private boolean dispatching;
+    private final HitIndex hits;
     // TODO: remove this?
     private final SetMultimap<Key, KeyListener> keyListeners = HashMultimap.create();
     private final Set<MouseListener> mouseListeners = Sets.newLinkedHashSet();
     private final Set<Animation> runningAnimations = Sets.newLinkedHashSet();
-    @SuppressWarnings("unused")
-    private final Screen screen;
+    private final FrameScheduler scheduler;
+    private final AnimationWheel wheel;
 
-    MapScreenAttachments(Screen screen) {
-        this.screen = screen;
+    MapScreenAttachments(AnimationWheel wheel, FrameScheduler scheduler, TileLayout layout) {
+        this.wheel = wheel;
+        this.hits = new HitIndex(layout);
+        this.scheduler = scheduler;
     }
 
     @Override
@@ -54,7 +61,10 @@ class MapScreenAttachments implements ScreenAttachments {
     @Override
     public void clearAttached() {
         mouseListeners.clear();
+        hits.clear();
         keyListeners.clear();
+        for (Animation animation : runningAnimations)
+            wheel.cancel(animation);
         runningAnimations.clear();
         classes.clear();
     }
@@ -76,15 +86,20 @@ class MapScreenAttachments implements ScreenAttachments {
         return false;
     }
 
+    @Override
+    public boolean hasRunningAnimations() {
+        return !runningAnimations.isEmpty();
+    }
+
     private void internalAttach(ScreenAttachment toAttach) {
         Preconditions.checkNotNull(toAttach, "attachment can't be null");
 
         if (toAttach instanceof KeyListener)
             keyListeners.put(((KeyListener) toAttach).listenFor(), (KeyListener) toAttach);
-        if (toAttach instanceof MouseListener)
-            mouseListeners.add((MouseListener) toAttach);
-        if (toAttach instanceof Animation)
-            runningAnimations.add((Animation) toAttach);
+        if (toAttach instanceof MouseListener && mouseListeners.add((MouseListener) toAttach))
+            hits.add((MouseListener) toAttach);
+        if (toAttach instanceof Animation && runningAnimations.add((Animation) toAttach))
+            wheel.schedule((Animation) toAttach, this);
         classes.add(toAttach.getClass());
     }
 
@@ -93,13 +108,24 @@ class MapScreenAttachments implements ScreenAttachments {
 
         if (attached instanceof KeyListener)
             keyListeners.remove(((KeyListener) attached).listenFor(), attached);
-        if (attached instanceof MouseListener)
-            mouseListeners.remove(attached);
-        if (attached instanceof Animation)
-            runningAnimations.remove(attached);
+        if (attached instanceof MouseListener && mouseListeners.remove(attached))
+            hits.remove((MouseListener) attached);
+        if (attached instanceof Animation && runningAnimations.remove(attached))
+            wheel.cancel((Animation) attached);
         classes.remove(attached.getClass());
     }
 
+    /**
+     * Called by the wheel after each frame of an attached animation. The
+     * screen is marked as having a frame pending rather than requesting one,
+     * so animated screens stay subject to the frame rate cap and throttling.
+     */
+    void onAnimationFrame(Animation animation, boolean finished) {
+        if (finished)
+            runningAnimations.remove(animation);
+        scheduler.markPending();
+    }
+
     @Override
     public void processKeyEvent(KeyEvent event) {
         Iterator<KeyListener> iter = Iterators.concat(keyListeners.get(event.getKey()).iterator(),
@@ -115,13 +141,29 @@ class MapScreenAttachments implements ScreenAttachments {
 
     @Override
     public void processMouseEvent(MouseEvent event) {
-        for (MouseListener listener : mouseListeners) {
-            if (listener instanceof Clickable) {
-                ClickableArea area = ((Clickable) listener).getClickableArea();
-                if (!area.intersects(event))
+        // the candidate list is reused, unless a listener dispatches another
+        // event while this one is being dispatched.
+        List<MouseListener> candidates = dispatching ? Lists.<MouseListener> newArrayList() : this.candidates;
+        boolean outer = !dispatching;
+        dispatching = true;
+        try {
+            hits.collect(event.getMouse().getX(), event.getMouse().getY(), candidates);
+            for (int i = 0; i < candidates.size(); ++i) {
+                MouseListener listener = candidates.get(i);
+                // an earlier listener may have removed it.
+                if (!mouseListeners.contains(listener))
                     continue;
+                if (listener instanceof Clickable) {
+                    ClickableArea area = ((Clickable) listener).getClickableArea();
+                    if (!area.intersects(event))
+                        continue;
+                }
+                event.forward(listener);
             }
-            event.forward(listener);
+        } finally {
+            candidates.clear();
+            if (outer)
+                dispatching = false;
         }
     }
 
@@ -139,12 +181,6 @@ class MapScreenAttachments implements ScreenAttachments {
 
     @Override
     public void render(Screen screen, MapCanvas canvas) {
-        Iterator<Animation> i = this.runningAnimations.iterator();
-        while (i.hasNext()) {
-            Animation running = i.next();
-            running.incrementFrame();
-            if (running.isFinished())
-                i.remove();
-        }
+        // animations are advanced by the animation wheel, not per render.
     }
 }
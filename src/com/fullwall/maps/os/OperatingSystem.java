@@ -3,7 +3,6 @@ package com.fullwall.maps.os;
 import java.util.Map;
 
 import org.bukkit.entity.Player;
-import org.bukkit.map.MapView;
 
 import com.fullwall.maps.MapController;
 import com.fullwall.maps.applications.Application;
@@ -21,12 +20,17 @@ import com.google.common.collect.Maps;
 public class OperatingSystem {
     private final ApplicationController applicationController = new SingleApplicationController(this);
     private final InstalledApplications installed;
+    private final FrameScheduler scheduler;
     private final Screen screen;
     private final StateHolder<Map<String, Tag>> settings;
 
-    public OperatingSystem(MapController controller, Player player, MapView current) {
+    public OperatingSystem(MapController controller, Player player, TileLayout layout) {
         this.settings = new NBTStateHolder(player);
-        this.screen = new MapScreen(new CanvasScreenRenderer(player, current), settings);
+        this.scheduler = new FrameScheduler(controller.getGovernor());
+        settings.load(scheduler);
+        settings.addSaver(scheduler);
+        this.screen = new MapScreen(new CanvasScreenRenderer(player, layout, scheduler), scheduler,
+                controller.getAnimations(), settings, layout);
         this.installed = new Installed(controller, settings);
 
         String load = settings.getGlobalStates().containsKey("application") ? ((StringTag) settings
@@ -38,6 +42,10 @@ public class OperatingSystem {
         return applicationController;
     }
 
+    public FrameScheduler getFrameScheduler() {
+        return scheduler;
+    }
+
     public InstalledApplications getInstalled() {
         return installed;
     }
@@ -58,6 +66,7 @@ public class OperatingSystem {
         screen.getRenderController().clearScreen();
         screen.getRenderController().clearAttached();
         screen.getAttachments().clearAttached();
+        scheduler.setApplicationFrameRate(application == null ? 0 : application.getTargetFrameRate());
         if (application == null) {
             SpringboardRenderer renderer = new SpringboardRenderer(this.applicationController, this.installed);
             settings.load(renderer);
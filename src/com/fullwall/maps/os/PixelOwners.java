@@ -0,0 +1,140 @@
+package com.fullwall.maps.os;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.fullwall.maps.applications.CanvasRenderer;
+import com.google.common.collect.Maps;
+
+/**
+ * Tracks which renderer last wrote each pixel of a screen. Ownership is stored
+ * as a plane of renderer ids, one <tt>short</tt> per pixel, alongside a small
+ * id table, so that claiming and releasing pixels never allocates.
+ *
+ * Each id also keeps the spans it has claimed, per row. Clearing or releasing
+ * a renderer only scans those spans instead of the whole plane, so the cost
+ * follows the area the renderer drew rather than the size of the screen.
+ *
+ * @author fullwall
+ */
+class PixelOwners {
+    private DamageRegion[] claimed = new DamageRegion[8];
+    private final int height;
+    private final Map<CanvasRenderer, Short> ids = Maps.newHashMap();
+    private final short[] owners;
+    private CanvasRenderer[] renderers = new CanvasRenderer[8];
+    private final int width;
+
+    PixelOwners(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.owners = new short[width * height];
+    }
+
+    /**
+     * Releases all ownership information.
+     */
+    void clear() {
+        for (int id = 1; id < claimed.length; ++id) {
+            if (claimed[id] != null)
+                reset(claimed[id], (short) id, null, (byte) 0, null);
+        }
+        Arrays.fill(renderers, null);
+        Arrays.fill(claimed, null);
+        ids.clear();
+    }
+
+    /**
+     * Sets every pixel owned by the given renderer to <tt>colour</tt>, marks
+     * those pixels as unowned and adds them to the given damage region.
+     */
+    void clear(CanvasRenderer renderer, byte[] buffer, byte colour, DamageRegion damage) {
+        Short id = ids.get(renderer);
+        if (id == null)
+            return;
+        reset(claimed[id], id, buffer, colour, damage);
+    }
+
+    /**
+     * Returns the id of the given renderer, assigning a free one if necessary.
+     */
+    short idFor(CanvasRenderer renderer) {
+        Short id = ids.get(renderer);
+        if (id != null)
+            return id;
+        short next = 1;
+        while (next < renderers.length && renderers[next] != null)
+            ++next;
+        if (next == Short.MAX_VALUE)
+            throw new IllegalStateException("too many renderers");
+        if (next >= renderers.length) {
+            renderers = Arrays.copyOf(renderers, renderers.length * 2);
+            claimed = Arrays.copyOf(claimed, renderers.length);
+        }
+        renderers[next] = renderer;
+        if (claimed[next] == null)
+            claimed[next] = new DamageRegion(width, height);
+        ids.put(renderer, next);
+        return next;
+    }
+
+    /**
+     * Marks the given rectangle, clipped to the screen, as owned by the
+     * renderer with the given id.
+     */
+    void own(int x, int y, int width, int height, short id) {
+        int startX = Math.max(x, 0), endX = Math.min(x + width, this.width);
+        int endY = Math.min(y + height, this.height);
+        if (startX >= endX)
+            return;
+        for (int row = Math.max(y, 0); row < endY; ++row) {
+            Arrays.fill(owners, row * this.width + startX, row * this.width + endX, id);
+        }
+        claimed[id].add(x, y, width, height);
+    }
+
+    /**
+     * Marks the pixel at the given position, which must lie within the
+     * screen, as owned by the renderer with the given id.
+     */
+    void own(int x, int y, short id) {
+        owners[y * width + x] = id;
+        claimed[id].addPixel(x, y);
+    }
+
+    /**
+     * Marks every pixel owned by the given renderer as unowned and frees its
+     * id.
+     */
+    void release(CanvasRenderer renderer) {
+        Short id = ids.remove(renderer);
+        if (id == null)
+            return;
+        short raw = id;
+        reset(claimed[raw], raw, null, (byte) 0, null);
+        renderers[raw] = null;
+    }
+
+    /**
+     * Marks the pixels within the given claimed spans that are still owned by
+     * the given id as unowned, optionally setting them to <tt>colour</tt>, and
+     * empties the spans.
+     */
+    private void reset(DamageRegion spans, short id, byte[] buffer, byte colour, DamageRegion damage) {
+        for (int y = spans.getMinY(); y <= spans.getMaxY(); ++y) {
+            int offset = y * width;
+            for (int i = offset + spans.getRowStart(y), end = offset + spans.getRowEnd(y); i < end; ++i) {
+                if (owners[i] != id)
+                    continue;
+                owners[i] = NONE;
+                if (buffer == null)
+                    continue;
+                buffer[i] = colour;
+                damage.addPixel(i - offset, y);
+            }
+        }
+        spans.clear();
+    }
+
+    private static final short NONE = 0;
+}
@@ -0,0 +1,252 @@
+package com.fullwall.maps.os;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+
+import org.bukkit.craftbukkit.map.CraftMapCanvas;
+import org.bukkit.craftbukkit.map.CraftMapView;
+import org.bukkit.map.MapCanvas;
+
+import com.fullwall.maps.utils.Messaging;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Direct access to the pixel buffer behind a {@link MapCanvas}. Renderers that
+ * opt in can use {@link #of(MapCanvas)} to write rows straight into memory
+ * instead of calling {@link MapCanvas#setPixel(int, int, byte)} per pixel.
+ *
+ * The buffer is row-major, {@link #getWidth()} pixels wide. After
+ * writing to it, callers must report the changed area with
+ * {@link #markDirty(int, int, int, int)}. Negative values must not be
+ * written.
+ *
+ * @author fullwall
+ */
+public abstract class RawCanvas {
+    /**
+     * Returns the backing buffer of the canvas.
+     */
+    public abstract byte[] getBuffer();
+
+    /**
+     * Returns the height of the canvas in pixels.
+     */
+    public int getHeight() {
+        return Constants.MapSize;
+    }
+
+    /**
+     * Returns the width of the canvas, and so the length of a buffer row, in
+     * pixels. Canvases of screens made up of several maps are wider than a
+     * single map.
+     */
+    public int getWidth() {
+        return Constants.MapSize;
+    }
+
+    /**
+     * Notifies the canvas that the given area of the buffer was written to.
+     * Servers send map updates per column, so callers that can should report
+     * changes as column spans.
+     */
+    public abstract void markDirty(int x, int y, int width, int height);
+
+    /**
+     * Resolves the raw buffer of a family of {@link MapCanvas}
+     * implementations, such as those of a specific server version. Adapters
+     * should look up any internals once, when they are created.
+     */
+    public interface Adapter {
+        /**
+         * Returns a raw view of the given canvas, or null if the canvas isn't
+         * supported by this adapter.
+         */
+        RawCanvas adapt(MapCanvas canvas);
+    }
+
+    private static class CraftAdapter implements Adapter {
+        private final MethodHandle flagDirty;
+        private final MethodHandle getBuffer;
+        private final MethodHandle getWorldMap;
+
+        private CraftAdapter(MethodHandle getBuffer, MethodHandle getWorldMap, MethodHandle flagDirty) {
+            this.getBuffer = getBuffer;
+            this.getWorldMap = getWorldMap;
+            this.flagDirty = flagDirty;
+        }
+
+        @Override
+        public RawCanvas adapt(MapCanvas canvas) {
+            if (!(canvas instanceof CraftMapCanvas))
+                return null;
+            try {
+                byte[] buffer = (byte[]) getBuffer.invokeExact((CraftMapCanvas) canvas);
+                Object worldMap = null;
+                if (flagDirty != null && canvas.getMapView() instanceof CraftMapView)
+                    worldMap = (Object) getWorldMap.invokeExact((CraftMapView) canvas.getMapView());
+                return new CraftRawCanvas(buffer, worldMap, flagDirty);
+            } catch (Throwable ex) {
+                report("Unable to access a map canvas buffer, drawing through setPixel instead.", ex);
+                return null;
+            }
+        }
+
+        private static Adapter create() {
+            MethodHandle getBuffer;
+            try {
+                Method method = CraftMapCanvas.class.getDeclaredMethod("getBuffer");
+                method.setAccessible(true);
+                getBuffer = MethodHandles.lookup().unreflect(method);
+            } catch (Throwable ex) {
+                return null;
+            }
+            MethodHandle getWorldMap = null, flagDirty = null;
+            try {
+                Field field = CraftMapView.class.getDeclaredField("worldMap");
+                field.setAccessible(true);
+                Method method = field.getType().getMethod("flagDirty", int.class, int.class, int.class);
+                getWorldMap = MethodHandles.lookup().unreflectGetter(field)
+                        .asType(MethodType.methodType(Object.class, CraftMapView.class));
+                flagDirty = MethodHandles.lookup().unreflect(method)
+                        .asType(MethodType.methodType(void.class, Object.class, int.class, int.class, int.class));
+            } catch (Throwable ex) {
+                // changes will only be sent when the server flags them itself.
+                flagDirty = null;
+            }
+            return new CraftAdapter(getBuffer, getWorldMap, flagDirty);
+        }
+    }
+
+    private static class CraftRawCanvas extends RawCanvas {
+        private final byte[] buffer;
+        private final MethodHandle flagDirty;
+        private final Object worldMap;
+
+        private CraftRawCanvas(byte[] buffer, Object worldMap, MethodHandle flagDirty) {
+            this.buffer = buffer;
+            this.worldMap = worldMap;
+            this.flagDirty = flagDirty;
+        }
+
+        @Override
+        public byte[] getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public void markDirty(int x, int y, int width, int height) {
+            if (worldMap == null)
+                return;
+            int endX = Math.min(x + width, SIZE), startY = Math.max(y, 0), endY = Math.min(y + height, SIZE) - 1;
+            if (startY > endY)
+                return;
+            try {
+                for (int col = Math.max(x, 0); col < endX; ++col) {
+                    flagDirty.invokeExact(worldMap, col, startY, endY);
+                }
+            } catch (Throwable ex) {
+                report("Unable to flag map columns as changed.", ex);
+            }
+        }
+    }
+
+    /**
+     * A copy of a canvas that no adapter supports, written back through
+     * {@link MapCanvas#setPixel(int, int, byte)} as areas are marked dirty.
+     * One copy is kept per canvas, so pixels set on the canvas directly after
+     * the copy was made aren't seen in its buffer.
+     */
+    private static class FallbackRawCanvas extends RawCanvas {
+        private final byte[] buffer = new byte[SIZE * SIZE];
+        private final MapCanvas canvas;
+
+        private FallbackRawCanvas(MapCanvas canvas) {
+            this.canvas = canvas;
+            for (int y = 0; y < SIZE; ++y) {
+                for (int x = 0; x < SIZE; ++x) {
+                    buffer[y * SIZE + x] = canvas.getPixel(x, y);
+                }
+            }
+        }
+
+        @Override
+        public byte[] getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public void markDirty(int x, int y, int width, int height) {
+            int endX = Math.min(x + width, SIZE), endY = Math.min(y + height, SIZE);
+            for (int row = Math.max(y, 0); row < endY; ++row) {
+                for (int col = Math.max(x, 0); col < endX; ++col) {
+                    canvas.setPixel(col, row, buffer[row * SIZE + col]);
+                }
+            }
+        }
+    }
+
+    private static final List<Adapter> adapters = new CopyOnWriteArrayList<Adapter>();
+
+    private static final ConcurrentMap<MapCanvas, FallbackRawCanvas> fallbacks = new MapMaker().weakKeys()
+            .makeMap();
+
+    private static volatile boolean reported;
+
+    private static final int SIZE = Constants.MapSize;
+
+    /**
+     * Returns a raw view of the given canvas, using the first registered
+     * adapter that supports it. Canvases that no adapter supports are given a
+     * buffered view, kept for as long as the canvas is, that writes back
+     * through {@link MapCanvas#setPixel(int, int, byte)}.
+     */
+    public static RawCanvas of(MapCanvas canvas) {
+        if (canvas instanceof ScreenCanvas)
+            return ((ScreenCanvas) canvas).getRaw();
+        for (Adapter adapter : adapters) {
+            RawCanvas raw = adapter.adapt(canvas);
+            if (raw != null)
+                return raw;
+        }
+        FallbackRawCanvas fallback = fallbacks.get(canvas);
+        if (fallback == null) {
+            fallback = new FallbackRawCanvas(canvas);
+            FallbackRawCanvas existing = fallbacks.putIfAbsent(canvas, fallback);
+            if (existing != null)
+                fallback = existing;
+        }
+        return fallback;
+    }
+
+    /**
+     * Registers an adapter, which takes precedence over previously registered
+     * adapters. Used to support server versions whose canvas internals differ.
+     */
+    public static void registerAdapter(Adapter adapter) {
+        adapters.add(0, adapter);
+    }
+
+    /**
+     * Logs the first failure to use canvas internals; later failures are
+     * almost always the same one, repeated every frame.
+     */
+    private static void report(String message, Throwable ex) {
+        if (reported)
+            return;
+        reported = true;
+        Messaging.log(Level.SEVERE, message, ex);
+    }
+
+    static {
+        Adapter craft = CraftAdapter.create();
+        if (craft != null)
+            adapters.add(craft);
+    }
+}
@@ -0,0 +1,157 @@
+package com.fullwall.maps.os;
+
+import java.awt.Image;
+
+import org.bukkit.map.MapCanvas;
+import org.bukkit.map.MapCursorCollection;
+import org.bukkit.map.MapFont;
+import org.bukkit.map.MapView;
+
+import com.fullwall.maps.graphics.Glyphs;
+import com.fullwall.maps.graphics.Sprite;
+import com.fullwall.maps.utils.Palette;
+
+/**
+ * The canvas handed to {@link com.fullwall.maps.applications.CanvasRenderer}s.
+ * Writes go straight into the screen buffer, claiming ownership of each pixel
+ * for the current renderer and recording the damaged area, so the screen
+ * never has to scan for what a renderer touched.
+ *
+ * For {@link com.fullwall.maps.applications.LayeredRenderer}s, writes go to
+ * the renderer's {@link Layer} instead and extend its coverage. In that case
+ * {@link #getBasePixel(int, int)} reads the screen below the layer.
+ *
+ * The canvas spans the whole screen, which may be larger than a single map
+ * when the screen is made up of several tiles.
+ *
+ * Negative colours are treated as transparent and are not written.
+ *
+ * @author fullwall
+ */
+class ScreenCanvas implements MapCanvas {
+    private final byte[] base;
+    private boolean claim;
+    private DamageRegion damage;
+    private final int height;
+    private short owner;
+    private final PixelOwners owners;
+    private byte[] pixels;
+    private final DamageRegion screenDamage;
+    private final RawCanvas raw = new RawCanvas() {
+        @Override
+        public byte[] getBuffer() {
+            return pixels;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public void markDirty(int x, int y, int width, int height) {
+            if (claim)
+                owners.own(x, y, width, height, owner);
+            damage.add(x, y, width, height);
+        }
+    };
+    private MapCanvas target;
+    private final int width;
+
+    ScreenCanvas(byte[] pixels, PixelOwners owners, DamageRegion damage, int width, int height) {
+        this.base = this.pixels = pixels;
+        this.owners = owners;
+        this.screenDamage = this.damage = damage;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Prepares the canvas for a renderer pass. Pixels written until the next
+     * call will be owned by the given renderer id.
+     */
+    void begin(MapCanvas target, short owner) {
+        this.target = target;
+        this.owner = owner;
+        this.pixels = base;
+        this.damage = screenDamage;
+        this.claim = true;
+    }
+
+    /**
+     * Prepares the canvas for a renderer pass that draws into the given layer.
+     */
+    void beginLayer(MapCanvas target, Layer layer) {
+        this.target = target;
+        this.pixels = layer.getPixels();
+        this.damage = layer.getCoverage();
+        this.claim = false;
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        Sprite.of(Palette.convert(image), image.getWidth(null)).draw(raw, x, y);
+    }
+
+    @Override
+    public void drawText(int x, int y, MapFont font, String text) {
+        if (!font.isValid(text))
+            throw new IllegalArgumentException("text contains invalid characters");
+        Glyphs.of(font).draw(raw, x, y, text);
+    }
+
+    @Override
+    public byte getBasePixel(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return 0;
+        return base[y * width + x];
+    }
+
+    @Override
+    public MapCursorCollection getCursors() {
+        return target.getCursors();
+    }
+
+    @Override
+    public MapView getMapView() {
+        return target.getMapView();
+    }
+
+    @Override
+    public byte getPixel(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return 0;
+        return pixels[y * width + x];
+    }
+
+    /**
+     * Returns a raw view of the screen buffer. Areas marked dirty are claimed
+     * by the current renderer.
+     */
+    RawCanvas getRaw() {
+        return raw;
+    }
+
+    @Override
+    public void setCursors(MapCursorCollection cursors) {
+        target.setCursors(cursors);
+    }
+
+    @Override
+    public void setPixel(int x, int y, byte colour) {
+        if (colour < 0 || x < 0 || y < 0 || x >= width || y >= height)
+            return;
+        int index = y * width + x;
+        if (claim)
+            owners.own(x, y, owner);
+        if (pixels[index] != colour) {
+            pixels[index] = colour;
+            damage.addPixel(x, y);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.fullwall.maps.os;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.map.MapCanvas;
+
+import com.fullwall.maps.applications.SharedRenderer;
+import com.fullwall.maps.interfaces.Screen;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+/**
+ * Frames of {@link SharedRenderer}s, keyed by renderer class, content key and
+ * screen size.
+ * Cached frames are immutable and weakly held, so a frame lives only as long
+ * as some screen is showing it.
+ *
+ * @author fullwall
+ */
+class SharedFrames {
+    private SharedFrames() {
+    }
+
+    private static final Map<List<Integer>, Layer> empty = Maps.newHashMap();
+
+    private static final Cache<List<Object>, Layer> frames = CacheBuilder.newBuilder().weakValues().build();
+
+    /**
+     * Returns the frame for the renderer's current content, rendering it if no
+     * screen of the same size is showing the same content.
+     */
+    static Layer acquire(SharedRenderer renderer, Screen screen, MapCanvas target, int width, int height) {
+        List<Object> key = Arrays.asList(renderer.getClass(), renderer.getContentKey(), width, height);
+        Layer frame = frames.getIfPresent(key);
+        if (frame != null) {
+            renderer.onSharedFrame(screen);
+            return frame;
+        }
+        // frames are shared by many renderers, so none is recorded as the owner.
+        frame = new Layer(null, width, height);
+        ScreenCanvas canvas = new ScreenCanvas(new byte[width * height], null, null, width, height);
+        canvas.beginLayer(target, frame);
+        renderer.render(screen, canvas);
+        frames.put(key, frame);
+        return frame;
+    }
+
+    /**
+     * Returns an empty frame of the given size, shown until a shared renderer
+     * is first rendered.
+     */
+    static Layer empty(int width, int height) {
+        List<Integer> key = Arrays.asList(width, height);
+        Layer frame = empty.get(key);
+        if (frame == null)
+            empty.put(key, frame = new Layer(null, width, height));
+        return frame;
+    }
+}
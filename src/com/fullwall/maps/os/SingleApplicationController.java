@@ -38,6 +38,7 @@ public class SingleApplicationController implements ApplicationController {
         if (state != ApplicationState.Paused && state != ApplicationState.Shutdown) {
             if (application != null)
                 application.interrupt(reason);
+            os.getFrameScheduler().setBackground(true);
             state = ApplicationState.Paused;
         }
     }
@@ -47,6 +48,7 @@ public class SingleApplicationController implements ApplicationController {
         if (state != ApplicationState.Running) {
             if (application != null)
                 application.resume();
+            os.getFrameScheduler().setBackground(false);
             state = ApplicationState.Running;
         }
     }
@@ -56,6 +58,7 @@ public class SingleApplicationController implements ApplicationController {
         endSession(InterruptReason.SwitchApplication);
         application = provider == null ? null : provider.create(os);
         os.notifyApplicationSwitched(provider, application);
+        os.getFrameScheduler().setBackground(false);
         state = ApplicationState.Running;
     }
 }
@@ -1,5 +1,6 @@
 package com.fullwall.maps.os;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.bukkit.map.MapCanvas;
@@ -7,7 +8,7 @@ import org.bukkit.map.MapCanvas;
 import com.fullwall.maps.applications.ApplicationIcon;
 import com.fullwall.maps.applications.ApplicationIcon.IconScale;
 import com.fullwall.maps.applications.ApplicationProvider;
-import com.fullwall.maps.applications.CanvasRenderer;
+import com.fullwall.maps.applications.SharedRenderer;
 import com.fullwall.maps.attachments.Clickable;
 import com.fullwall.maps.attachments.MouseClickEvent;
 import com.fullwall.maps.attachments.MouseMoveEvent;
@@ -22,11 +23,12 @@ import com.fullwall.maps.shapes.Rectangle;
 import com.fullwall.maps.storage.DataKey;
 import com.google.common.collect.Lists;
 
-public class SpringboardRenderer implements CanvasRenderer, Saveable, Loadable {
+public class SpringboardRenderer implements SharedRenderer, Saveable, Loadable {
     private final ApplicationController applicationController;
     private final List<ScreenAttachment> buttons = Lists.newArrayList();
     private byte currentPage = 1;
     private final InstalledApplications installed;
+    private int loading;
     private boolean rendered = false;
 
     public SpringboardRenderer(ApplicationController application, InstalledApplications installed) {
@@ -34,11 +36,64 @@ public class SpringboardRenderer implements CanvasRenderer, Saveable, Loadable {
         this.installed = installed;
     }
 
+    private void attachButtons(Screen screen, ApplicationIcon[] icons) {
+        screen.getAttachments().removeAll(buttons);
+        buttons.clear();
+        int x = HORIZONTAL_PADDING, y = VERTICAL_PADDING, idx = 0;
+        for (int i = 0; i < ROWS; ++i) {
+            for (int j = 0; j < COLS; ++j) {
+                if (icons[idx] == null)
+                    break;
+                Clickable button = new ApplicationSwitcherButton(x, y, installed.getInstalled(icons[idx]
+                        .getName()));
+                screen.getAttachments().attach(button);
+                buttons.add(button);
+                x += IconScale.Layout.getWidth() + INNER_SPACING;
+                ++idx;
+            }
+            x = HORIZONTAL_PADDING;
+            y += IconScale.Layout.getHeight() + APP_SPACING;
+        }
+    }
+
     @Override
     public boolean clearPixelsOnRemove() {
         return true;
     }
 
+    private int countLoading(ApplicationIcon[] icons) {
+        int count = 0;
+        for (ApplicationIcon icon : icons) {
+            if (icon != null && !icon.isLoaded())
+                ++count;
+        }
+        return count;
+    }
+
+    /**
+     * The icons on the current page, and which of them are still showing
+     * placeholders, are all that the springboard draws.
+     */
+    @Override
+    public Object getContentKey() {
+        ApplicationIcon[] icons = getPageIcons();
+        List<Object> key = Lists.<Object> newArrayList(Arrays.asList(icons));
+        for (ApplicationIcon icon : icons) {
+            key.add(icon != null && icon.isLoaded());
+        }
+        return key;
+    }
+
+    private ApplicationIcon[] getPageIcons() {
+        int end = currentPage * (ROWS * COLS), start = end - (ROWS * COLS);
+        ApplicationIcon[] icons = new ApplicationIcon[ROWS * COLS];
+        for (int i = start, idx = 0; i < end && installed.size() > i; ++i, ++idx) {
+            ApplicationProvider provider = installed.getInstalled(i);
+            icons[idx] = provider != null ? provider.getIcon(IconScale.Layout) : Images.MissingApp;
+        }
+        return icons;
+    }
+
     @Override
     public RenderPriority getPriority() {
         return RenderPriority.Normal;
@@ -51,7 +106,8 @@ public class SpringboardRenderer implements CanvasRenderer, Saveable, Loadable {
 
     @Override
     public boolean isRendering() {
-        return !rendered;
+        // redraw once icons that were loading have finished.
+        return !rendered || loading > 0 && countLoading(getPageIcons()) < loading;
     }
 
     @Override
@@ -62,32 +118,32 @@ public class SpringboardRenderer implements CanvasRenderer, Saveable, Loadable {
         currentPage = (byte) settings.getInt("page");
     }
 
+    @Override
+    public void onSharedFrame(Screen screen) {
+        ApplicationIcon[] icons = getPageIcons();
+        attachButtons(screen, icons);
+        loading = countLoading(icons);
+        rendered = true;
+    }
+
     @Override
     public void render(Screen screen, MapCanvas canvas) {
         if (!rendered) {
-            screen.getAttachments().removeAll(buttons);
-            int end = currentPage * (ROWS * COLS), start = end - (ROWS * COLS);
-            ApplicationIcon[] icons = new ApplicationIcon[ROWS * COLS];
-            for (int i = start, idx = 0; i < end && installed.size() > i; ++i, ++idx) {
-                ApplicationProvider provider = installed.getInstalled(i);
-                icons[idx] = provider != null ? provider.getIcon(IconScale.Layout) : Images.MissingApp;
-            }
+            ApplicationIcon[] icons = getPageIcons();
+            loading = countLoading(icons);
             int x = HORIZONTAL_PADDING, y = VERTICAL_PADDING, idx = 0;
             for (int i = 0; i < ROWS; ++i) {
                 for (int j = 0; j < COLS; ++j) {
                     if (icons[idx] == null)
                         break;
                     icons[idx].render(x, y, canvas);
-                    Clickable button = new ApplicationSwitcherButton(x, y, installed.getInstalled(icons[idx]
-                            .getName()));
-                    screen.getAttachments().attach(button);
-                    buttons.add(button);
                     x += IconScale.Layout.getWidth() + INNER_SPACING;
                     ++idx;
                 }
                 x = HORIZONTAL_PADDING;
                 y += IconScale.Layout.getHeight() + APP_SPACING;
             }
+            attachButtons(screen, icons);
             rendered = true;
         }
     }
@@ -0,0 +1,115 @@
+package com.fullwall.maps.os;
+
+import org.bukkit.map.MapView;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A grid of maps that together display one screen, such as maps in item
+ * frames on a wall. The screen's framebuffer is {@link #getWidth()} by
+ * {@link #getHeight()} pixels and each map shows one {@link Constants#MapSize}
+ * square tile of it.
+ *
+ * The mouse moves in cursor units spanning the whole grid: each tile covers
+ * {@link #CURSOR_SPAN} units in either direction, and the top left tile covers
+ * -128 to 127 just like a single map.
+ *
+ * @author fullwall
+ */
+public class TileLayout {
+    private final int columns;
+    private final int rows;
+    private final MapView[] tiles;
+
+    /**
+     * Creates a layout of the given maps, listed row by row from the top left.
+     */
+    public TileLayout(int columns, int rows, MapView... tiles) {
+        Preconditions.checkArgument(columns > 0 && rows > 0, "layout must have at least one tile");
+        Preconditions.checkArgument(tiles.length == columns * rows, "expected " + columns * rows + " maps, got "
+                + tiles.length);
+        this.columns = columns;
+        this.rows = rows;
+        this.tiles = tiles.clone();
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the height of the screen in pixels.
+     */
+    public int getHeight() {
+        return rows * Constants.MapSize;
+    }
+
+    /**
+     * Returns the largest horizontal cursor coordinate on the screen.
+     */
+    public int getMaxCursorX() {
+        return columns * CURSOR_SPAN - 129;
+    }
+
+    /**
+     * Returns the largest vertical cursor coordinate on the screen.
+     */
+    public int getMaxCursorY() {
+        return rows * CURSOR_SPAN - 129;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the map showing the tile with the given index.
+     */
+    public MapView getTile(int index) {
+        return tiles[index];
+    }
+
+    /**
+     * Returns the index of the tile under the given cursor coordinates.
+     */
+    public int getTileAt(int cursorX, int cursorY) {
+        int column = Math.min(Math.max((cursorX + 128) / CURSOR_SPAN, 0), columns - 1);
+        int row = Math.min(Math.max((cursorY + 128) / CURSOR_SPAN, 0), rows - 1);
+        return row * columns + column;
+    }
+
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    /**
+     * Returns the width of the screen in pixels.
+     */
+    public int getWidth() {
+        return columns * Constants.MapSize;
+    }
+
+    /**
+     * Returns the index of the tile shown by the given map, or -1 if the map
+     * is not part of this layout.
+     */
+    public int indexOf(MapView map) {
+        for (int i = 0; i < tiles.length; ++i) {
+            if (tiles[i].getId() == map.getId())
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a layout made up of a single map.
+     */
+    public static TileLayout of(MapView map) {
+        return new TileLayout(1, 1, map);
+    }
+
+    /**
+     * The number of cursor units covered by one tile.
+     */
+    public static final int CURSOR_SPAN = 256;
+}
@@ -0,0 +1,39 @@
+package com.fullwall.maps.os;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The plugin's pool of worker threads, shared by off-thread rendering and
+ * image conversion so that they don't compete with each other and the main
+ * thread for cores. Sized to leave one core free for the main thread, and
+ * shut down when the plugin is disabled.
+ *
+ * @author fullwall
+ */
+public class Workers {
+    private Workers() {
+    }
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Returns the shared pool, creating it if it hasn't been created since
+     * the last shutdown.
+     */
+    public static synchronized ForkJoinPool get() {
+        if (pool == null)
+            pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        return pool;
+    }
+
+    /**
+     * Shuts the pool down, abandoning queued tasks.
+     */
+    public static synchronized void shutdown() {
+        if (pool == null)
+            return;
+        pool.shutdownNow();
+        pool = null;
+    }
+}
@@ -133,6 +133,7 @@ public class CanvasSelectors {
                         pixels[(i + x) + (j * height + y)] = selected[i + j * height];
                     }
                 }
+                screen.getRenderController().markDamaged(x, y, width, height);
             }
         }
     }
@@ -0,0 +1,56 @@
+package com.fullwall.maps.shapes;
+
+import java.util.Arrays;
+
+import com.fullwall.maps.os.RawCanvas;
+
+/**
+ * Writes spans straight into a raw canvas, clipped to its bounds.
+ *
+ * @author fullwall
+ */
+class CanvasSpans implements SpanSink {
+    private final byte[] buffer;
+    private final RawCanvas canvas;
+    private final byte colour;
+    private final int height;
+    private final int width;
+
+    CanvasSpans(RawCanvas canvas, byte colour) {
+        this.canvas = canvas;
+        this.colour = colour;
+        this.buffer = canvas.getBuffer();
+        this.width = canvas.getWidth();
+        this.height = canvas.getHeight();
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Writes a single pixel, if it lies within the canvas.
+     */
+    void pixel(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return;
+        buffer[y * width + x] = colour;
+        canvas.markDirty(x, y, 1, 1);
+    }
+
+    @Override
+    public void span(int y, int startX, int endX) {
+        if (y < 0 || y >= height)
+            return;
+        startX = Math.max(startX, 0);
+        endX = Math.min(endX, width);
+        if (startX >= endX)
+            return;
+        Arrays.fill(buffer, y * width + startX, y * width + endX, colour);
+        canvas.markDirty(startX, y, endX - startX, 1);
+    }
+}
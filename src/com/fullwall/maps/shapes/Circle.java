@@ -5,6 +5,7 @@ import com.fullwall.maps.shapes.Outliner.PrimitiveDrawer;
 public class Circle implements Shape {
     private final int centerX;
     private final int centerY;
+    private CoverageMask mask;
     private final int radius;
 
     public Circle(int centerX, int centerY, int radius) {
@@ -15,10 +16,49 @@ public class Circle implements Shape {
         this.radius = radius;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Circle other = (Circle) obj;
+        return centerX == other.centerX && centerY == other.centerY && radius == other.radius;
+    }
+
+    @Override
+    public void fill(SpanSink sink) {
+        // the widest half-span of each row that stays within the radius.
+        int halfWidth = radius, squared = radius * radius;
+        for (int dy = 0; dy < radius; ++dy) {
+            while (halfWidth * halfWidth + dy * dy >= squared)
+                --halfWidth;
+            sink.span(centerY + dy, centerX - halfWidth, centerX + halfWidth + 1);
+            if (dy != 0)
+                sink.span(centerY - dy, centerX - halfWidth, centerX + halfWidth + 1);
+        }
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return new Rectangle(centerX - radius, centerY - radius, radius * 2 + 1, radius * 2 + 1);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 + centerX) + centerY) + radius;
+    }
+
     @Override
     public boolean interescts(int x, int y) {
-        double distance = Math.pow((centerX - x), 2) + Math.pow((this.centerY - y), 2);
-        return distance < Math.pow(this.radius, 2);
+        if (mask == null) {
+            if (!CoverageMask.canMask(this)) {
+                int dx = centerX - x, dy = centerY - y;
+                return (long) dx * dx + (long) dy * dy < (long) radius * radius;
+            }
+            mask = CoverageMask.of(this);
+        }
+        return mask.contains(x, y);
     }
 
     @Override
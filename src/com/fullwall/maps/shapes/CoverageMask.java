@@ -0,0 +1,138 @@
+package com.fullwall.maps.shapes;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * The pixels covered by a rasterised {@link Shape}: its bounding box and one
+ * bit per pixel within it. Testing whether a point is covered is a single bit
+ * lookup, and the mask can be filled again as spans without rasterising the
+ * shape.
+ *
+ * Masks are shared between equal shapes through a cache bounded by the total
+ * size of the masks it holds.
+ *
+ * @author fullwall
+ */
+public class CoverageMask {
+    private final long[] bits;
+    private final int height;
+    private final int width;
+    private final int x;
+    private final int y;
+
+    private CoverageMask(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.bits = new long[(width * height + 63) >>> 6];
+    }
+
+    /**
+     * Returns whether the given point is covered.
+     */
+    public boolean contains(int px, int py) {
+        int dx = px - x, dy = py - y;
+        if (dx < 0 || dy < 0 || dx >= width || dy >= height)
+            return false;
+        int index = dy * width + dx;
+        return (bits[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Passes every covered row of the mask to the given sink, as spans.
+     */
+    public void fill(SpanSink sink) {
+        for (int row = 0; row < height; ++row) {
+            int offset = row * width, start = -1;
+            for (int col = 0; col <= width; ++col) {
+                int index = offset + col;
+                boolean covered = col < width && (bits[index >>> 6] & 1L << index) != 0;
+                if (covered && start < 0) {
+                    start = col;
+                } else if (!covered && start >= 0) {
+                    sink.span(y + row, x + start, x + col);
+                    start = -1;
+                }
+            }
+        }
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(x, y, width, height);
+    }
+
+    private static final int MAX_AREA = 1 << 20;
+
+    private static final int MAX_CACHED_WORDS = 1 << 18;
+
+    private static final Cache<Shape, CoverageMask> masks = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHED_WORDS).weigher(new Weigher<Shape, CoverageMask>() {
+                @Override
+                public int weigh(Shape key, CoverageMask value) {
+                    return value.bits.length + 1;
+                }
+            }).build();
+
+    /**
+     * Returns whether a mask can be made of the given shape. Masks of shapes
+     * covering more than about a million pixels are not made.
+     */
+    public static boolean canMask(Shape shape) {
+        Rectangle bounds = shape.getBounds();
+        return (long) bounds.getWidth() * bounds.getHeight() <= MAX_AREA;
+    }
+
+    /**
+     * Returns the mask of the given shape, rasterising it if no equal shape
+     * has a cached mask. The shape must be small enough to
+     * {@link #canMask(Shape) mask}.
+     */
+    public static CoverageMask of(final Shape shape) {
+        try {
+            return masks.get(shape, new Callable<CoverageMask>() {
+                @Override
+                public CoverageMask call() {
+                    return rasterise(shape);
+                }
+            });
+        } catch (ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    private static CoverageMask rasterise(Shape shape) {
+        Rectangle bounds = shape.getBounds();
+        if (!canMask(shape))
+            throw new IllegalArgumentException("shape is too large to mask");
+        final CoverageMask mask = new CoverageMask(bounds.getX(), bounds.getY(), Math.max(bounds.getWidth(), 0),
+                Math.max(bounds.getHeight(), 0));
+        SpanSink sink = new SpanSink() {
+            @Override
+            public void span(int y, int startX, int endX) {
+                int row = y - mask.y;
+                if (row < 0 || row >= mask.height)
+                    return;
+                int offset = row * mask.width;
+                int end = Math.min(endX - mask.x, mask.width);
+                for (int col = Math.max(startX - mask.x, 0); col < end; ++col) {
+                    int index = offset + col;
+                    mask.bits[index >>> 6] |= 1L << index;
+                }
+            }
+        };
+        // transformed shapes fill from their own mask, so sample them directly.
+        if (shape instanceof TransformedShape) {
+            ((TransformedShape) shape).sample(sink);
+        } else {
+            shape.fill(sink);
+        }
+        return mask;
+    }
+}
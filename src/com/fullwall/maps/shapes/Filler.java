@@ -1,67 +1,134 @@
 package com.fullwall.maps.shapes;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Arrays;
 
 import org.bukkit.map.MapCanvas;
 
-import com.fullwall.maps.utils.Point;
+import com.fullwall.maps.os.RawCanvas;
 
 public class Filler {
+    /**
+     * A scanline flood fill over the raw canvas buffer. Each span is found and
+     * filled in one pass, and seeds for the rows above and below are pushed as
+     * packed coordinates onto an <tt>int</tt> stack, one per run. A bitmap of
+     * visited pixels stops spans being filled twice, even when the fill
+     * colour is itself part of the region. The stack and bitmap are kept
+     * between draws, so filling allocates nothing once they have grown to
+     * fit the canvas.
+     */
     private static class FloodFiller implements Drawer {
         private final byte except;
-        private final Deque<Point> queue = new ArrayDeque<Point>();
-        private final Point start;
+        private int[] stack = new int[64];
+        private final int startX;
+        private final int startY;
         private final boolean useExcept;
+        private long[] visited = new long[0];
 
         private FloodFiller(int x, int y, byte except, boolean useExcept) {
             this.except = except;
             this.useExcept = useExcept;
-            this.start = new Point(x, y);
+            this.startX = x;
+            this.startY = y;
         }
 
         @Override
         public FloodFiller draw(MapCanvas canvas, byte colour) {
-            queue.clear();
-            queue.add(start);
-            while (!queue.isEmpty()) {
-                Point point = queue.pop();
-                out: if (point.getX() - 1 >= 0) {
-                    byte left = canvas.getPixel(point.getX() - 1, point.getY());
-                    if (stop(left))
-                        break out;
-                    canvas.setPixel(point.getX() - 1, point.getY(), colour);
-                    int start = point.getX() - 1;
-                    while (start >= 0 && !stop(canvas.getPixel(start, point.getY()))) {
-                        canvas.setPixel(start, point.getY(), colour);
-                        queue.add(new Point(start, point.getY()));
-                        --start;
-                    }
-                } else if (point.getX() + 1 > 127)
-                    continue;
-                byte right = canvas.getPixel(point.getX() - 1, point.getY());
-                if (stop(right))
+            RawCanvas raw = RawCanvas.of(canvas);
+            byte[] buffer = raw.getBuffer();
+            int width = raw.getWidth(), height = raw.getHeight();
+            if (colour < 0 || startX < 0 || startY < 0 || startX >= width || startY >= height
+                    || stop(buffer[startY * width + startX]))
+                return this;
+            int words = (width * height + 63) >>> 6;
+            if (visited.length < words) {
+                visited = new long[words];
+            } else {
+                Arrays.fill(visited, 0, words, 0);
+            }
+            int size = 0;
+            stack[size++] = startY << 16 | startX;
+            while (size > 0) {
+                int seed = stack[--size], y = seed >>> 16, x = seed & 0xFFFF, offset = y * width;
+                if (isVisited(offset + x))
                     continue;
-                canvas.setPixel(point.getX() + 1, point.getY(), colour);
-                int start = point.getX() + 1;
-                while (start <= 127 && !stop(canvas.getPixel(start, point.getY()))) {
-                    canvas.setPixel(start, point.getY(), colour);
-                    queue.add(new Point(start, point.getY()));
-                    ++start;
+                int left = x, right = x;
+                while (left > 0 && fills(buffer, offset + left - 1))
+                    --left;
+                while (right < width - 1 && fills(buffer, offset + right + 1))
+                    ++right;
+                for (int i = offset + left; i <= offset + right; ++i) {
+                    visited[i >>> 6] |= 1L << i;
+                    buffer[i] = colour;
                 }
+                raw.markDirty(left, y, right - left + 1, 1);
+                if (y > 0)
+                    size = pushRuns(buffer, offset - width, left, right, y - 1, size);
+                if (y < height - 1)
+                    size = pushRuns(buffer, offset + width, left, right, y + 1, size);
             }
             return this;
         }
 
+        private boolean fills(byte[] buffer, int index) {
+            return !isVisited(index) && !stop(buffer[index]);
+        }
+
+        private boolean isVisited(int index) {
+            return (visited[index >>> 6] & 1L << index) != 0;
+        }
+
+        /**
+         * Pushes a seed for every run of fillable pixels in the given row
+         * between <tt>left</tt> and <tt>right</tt>, returning the new stack
+         * size.
+         */
+        private int pushRuns(byte[] buffer, int offset, int left, int right, int y, int size) {
+            boolean inRun = false;
+            for (int x = left; x <= right; ++x) {
+                boolean fills = fills(buffer, offset + x);
+                if (fills && !inRun) {
+                    if (size == stack.length)
+                        stack = Arrays.copyOf(stack, size * 2);
+                    stack[size++] = y << 16 | x;
+                }
+                inRun = fills;
+            }
+            return size;
+        }
+
         private boolean stop(byte pixel) {
             return useExcept ? pixel == except : pixel != except;
         }
     }
 
+    /**
+     * Returns a drawer that fills the interior of the given shape with a
+     * scanline rasteriser. Unlike the flood fills, this writes only the
+     * covered pixels and doesn't depend on what is already on the canvas.
+     */
+    public static Drawer fill(final Shape shape) {
+        return new Drawer() {
+            @Override
+            public Drawer draw(MapCanvas canvas, byte colour) {
+                if (colour >= 0)
+                    shape.fill(new CanvasSpans(RawCanvas.of(canvas), colour));
+                return this;
+            }
+        };
+    }
+
+    /**
+     * Returns a drawer that flood fills the area around the given point that
+     * is bounded by pixels of the given colour.
+     */
     public static Drawer fillExcept(int x, int y, byte colour) {
         return new FloodFiller(x, y, colour, true);
     }
 
+    /**
+     * Returns a drawer that flood fills the connected area of the given
+     * colour around the given point.
+     */
     public static Drawer replaceFill(int x, int y, byte replace) {
         return new FloodFiller(x, y, replace, false);
     }
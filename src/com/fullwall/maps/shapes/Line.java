@@ -6,6 +6,7 @@ import com.fullwall.maps.utils.Point;
 
 public class Line implements Shape {
     private final LineEquation equation;
+    private CoverageMask mask;
     private final Point p1, p2;
 
     public Line(int x1, int y1, int x2, int y2) {
@@ -18,10 +19,60 @@ public class Line implements Shape {
         this.equation = LineEquations.create(p1.getX(), p1.getY(), p2.getX(), p2.getY());
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Line other = (Line) obj;
+        return p1.equals(other.p1) && p2.equals(other.p2);
+    }
+
+    @Override
+    public void fill(SpanSink sink) {
+        int x1 = p1.getX(), y1 = p1.getY(), x2 = p2.getX(), y2 = p2.getY();
+        int dx = Math.abs(x2 - x1), dy = Math.abs(y2 - y1);
+        int sx = x1 > x2 ? -1 : 1, sy = y1 > y2 ? -1 : 1;
+        int error = dx - dy;
+        while (true) {
+            sink.span(y1, x1, x1 + 1);
+            if (x1 == x2 && y1 == y2)
+                break;
+            int e2 = error * 2;
+            if (e2 > -dy) {
+                error -= dy;
+                x1 += sx;
+            }
+            if (e2 < dx) {
+                error += dx;
+                y1 += sy;
+            }
+        }
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        int minX = Math.min(p1.getX(), p2.getX()), minY = Math.min(p1.getY(), p2.getY());
+        return new Rectangle(minX, minY, Math.abs(p2.getX() - p1.getX()) + 1, Math.abs(p2.getY() - p1.getY()) + 1);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 + p1.hashCode()) + p2.hashCode();
+    }
+
+    /**
+     * Returns whether the given point is one of the line's pixels.
+     */
     @Override
     public boolean interescts(int x, int y) {
-        return (equation.isHorizontal() && y == this.p1.getY())
-                || (equation.isVertical() && x == this.p1.getX()) || y == equation.calculate(x);
+        if (mask == null) {
+            if (!CoverageMask.canMask(this))
+                return walk(x, y);
+            mask = CoverageMask.of(this);
+        }
+        return mask.contains(x, y);
     }
 
     @Override
@@ -31,7 +82,7 @@ public class Line implements Shape {
 
     @Override
     public Line rotate(double degrees) {
-        Point[] rotated = ShapeRotations.rotate(degrees, p1, p1);
+        Point[] rotated = ShapeRotations.rotate(degrees, p1, p2);
         return new Line(rotated[0], rotated[1]);
     }
 
@@ -46,4 +97,33 @@ public class Line implements Shape {
     public Line translate(int x, int y) {
         return new Line(p1.getX() + x, p1.getY() + y, p2.getX() + x, p2.getY() + y);
     }
+
+    /**
+     * Steps along the same pixels as {@link #fill(SpanSink)}, returning
+     * whether the given point is one of them. Used for lines too large to
+     * mask.
+     */
+    private boolean walk(int x, int y) {
+        int x1 = p1.getX(), y1 = p1.getY(), x2 = p2.getX(), y2 = p2.getY();
+        if (x < Math.min(x1, x2) || x > Math.max(x1, x2) || y < Math.min(y1, y2) || y > Math.max(y1, y2))
+            return false;
+        int dx = Math.abs(x2 - x1), dy = Math.abs(y2 - y1);
+        int sx = x1 > x2 ? -1 : 1, sy = y1 > y2 ? -1 : 1;
+        int error = dx - dy;
+        while (true) {
+            if (x1 == x && y1 == y)
+                return true;
+            if (x1 == x2 && y1 == y2)
+                return false;
+            int e2 = error * 2;
+            if (e2 > -dy) {
+                error -= dy;
+                x1 += sx;
+            }
+            if (e2 < dx) {
+                error += dx;
+                y1 += sy;
+            }
+        }
+    }
 }
@@ -53,6 +53,8 @@ public class LineEquations {
         if (x2 - x1 == 0) {
             return vertical;
         }
+        if (y2 - y1 == 0)
+            return horizontal;
         final int gradient = (x2 - x1) / (y2 - y1);
         if (gradient == 0)
             return horizontal;
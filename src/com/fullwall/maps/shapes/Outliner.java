@@ -2,6 +2,7 @@ package com.fullwall.maps.shapes;
 
 import org.bukkit.map.MapCanvas;
 
+import com.fullwall.maps.os.RawCanvas;
 import com.fullwall.maps.utils.Point;
 
 public class Outliner implements Drawer {
@@ -15,54 +16,78 @@ public class Outliner implements Drawer {
 
     @Override
     public Outliner draw(MapCanvas canvas, byte colour) {
-        shape.outline(new PrimitiveDrawer(canvas, colour));
+        if (colour >= 0)
+            shape.outline(new PrimitiveDrawer(new CanvasSpans(RawCanvas.of(canvas), colour), Transform.IDENTITY));
         return this;
     }
 
+    /**
+     * Draws lines and circles of the outliner's thickness into a raw buffer.
+     * Lines are clipped to the canvas before they are rasterised, and thick
+     * lines and circles are drawn as filled spans, so the cost follows the
+     * number of visible pixels rather than the length or thickness drawn.
+     *
+     * Coordinates pass through the drawer's {@link Transform} first, so that
+     * transformed shapes can outline their base shape unchanged.
+     */
     public class PrimitiveDrawer {
-        private final MapCanvas canvas;
-        private final byte colour;
+        private final CanvasSpans spans;
+        private final Transform transform;
 
-        private PrimitiveDrawer(MapCanvas canvas, byte colour) {
-            this.canvas = canvas;
-            this.colour = colour;
+        private PrimitiveDrawer(CanvasSpans spans, Transform transform) {
+            this.spans = spans;
+            this.transform = transform;
         }
 
+        /**
+         * Draws a circle outline, growing inwards from the radius as the
+         * thickness increases. Under a transform, the radius is scaled by the
+         * transform's uniform scale.
+         */
         public void drawCircle(int centerX, int centerY, int radius) {
-            int error = -radius, x = radius, y = 0;
-            while (x > y) {
-                drawCirclePoints(centerX, centerY, x, y);
-                drawCirclePoints(centerX, centerY, y, x);
-
-                error += y;
-                ++y;
-                error += y;
-                if (error >= 0) {
-                    --x;
-                    error -= x * 2;
+            if (!transform.isIdentity()) {
+                int x = centerX;
+                centerX = transform.transformX(x, centerY);
+                centerY = transform.transformY(x, centerY);
+                radius = (int) Math.round(radius * transform.getScale());
+            }
+            int inner = radius - thickness;
+            // rows are limited to the visible ones; pixels within a distance
+            // of r + 0.5 from the centre make up a circle of radius r.
+            int startY = Math.max(-radius, -centerY), endY = Math.min(radius, spans.getHeight() - 1 - centerY);
+            for (int dy = startY; dy <= endY; ++dy) {
+                int outerWidth = halfWidth(radius, dy);
+                int innerWidth = Math.abs(dy) <= inner ? halfWidth(inner, dy) : -1;
+                int y = centerY + dy;
+                if (innerWidth < 0) {
+                    spans.span(y, centerX - outerWidth, centerX + outerWidth + 1);
+                } else {
+                    spans.span(y, centerX - outerWidth, centerX - innerWidth);
+                    spans.span(y, centerX + innerWidth + 1, centerX + outerWidth + 1);
                 }
             }
-            drawCirclePoints(centerX, centerY, x, y);
-        }
-
-        private void drawCirclePoints(int centerX, int centerY, int x, int y) {
-            canvas.setPixel(centerX + x, centerY + y, colour);
-            if (x != 0)
-                canvas.setPixel(centerX - x, centerY + y, colour);
-            if (y != 0)
-                canvas.setPixel(centerX + x, centerY - y, colour);
-            canvas.setPixel(centerX - x, centerY - y, colour);
         }
 
         public void drawLine(int x1, int y1, int x2, int y2) {
-            int halved = thickness / 2;
-            int offsetLow = -halved, offsetHigh = halved;
-            if (thickness % 2 == 0)
-                --offsetHigh;
-            int current = offsetHigh;
-            while (current != offsetLow) {
-                drawLine0(x1, y1 + current, x2, y2 + current);
-                --current;
+            if (!transform.isIdentity()) {
+                int x = x1;
+                x1 = transform.transformX(x, y1);
+                y1 = transform.transformY(x, y1);
+                x = x2;
+                x2 = transform.transformX(x, y2);
+                y2 = transform.transformY(x, y2);
+            }
+            // clip against the canvas, extended by the thickness of the line.
+            double margin = thickness / 2D + 1;
+            double[] clipped = clip(x1, y1, x2, y2, -margin, -margin, spans.getWidth() - 1 + margin,
+                    spans.getHeight() - 1 + margin);
+            if (clipped == null)
+                return;
+            if (thickness == 1) {
+                drawThinLine((int) Math.round(clipped[0]), (int) Math.round(clipped[1]),
+                        (int) Math.round(clipped[2]), (int) Math.round(clipped[3]));
+            } else {
+                drawThickLine(clipped[0], clipped[1], clipped[2], clipped[3]);
             }
         }
 
@@ -70,7 +95,25 @@ public class Outliner implements Drawer {
             drawLine(p1.getX(), p1.getY(), p2.getX(), p2.getY());
         }
 
-        private void drawLine0(int x1, int y1, int x2, int y2) {
+        private void drawThickLine(double x1, double y1, double x2, double y2) {
+            double dx = x2 - x1, dy = y2 - y1, length = Math.sqrt(dx * dx + dy * dy);
+            if (length == 0) {
+                dx = 1;
+                length = 1;
+            }
+            // the line covers pixel centres, so extend it by half a pixel at
+            // each end and move from centres to pixel corners.
+            double ux = dx / length / 2, uy = dy / length / 2;
+            double nx = -uy * thickness, ny = ux * thickness;
+            double startX = x1 - ux + 0.5, startY = y1 - uy + 0.5, endX = x2 + ux + 0.5, endY = y2 + uy + 0.5;
+            int[] xs = { (int) Math.round(startX + nx), (int) Math.round(endX + nx), (int) Math.round(endX - nx),
+                    (int) Math.round(startX - nx) };
+            int[] ys = { (int) Math.round(startY + ny), (int) Math.round(endY + ny), (int) Math.round(endY - ny),
+                    (int) Math.round(startY - ny) };
+            Scanline.fillPolygon(xs, ys, spans);
+        }
+
+        private void drawThinLine(int x1, int y1, int x2, int y2) {
             int dx = Math.abs(x2 - x1);
             int dy = Math.abs(y2 - y1);
             int sx = 1, sy = 1, e2;
@@ -80,7 +123,7 @@ public class Outliner implements Drawer {
             if (y1 > y2)
                 sy = -1;
             while (true) {
-                canvas.setPixel(x1, y1, colour);
+                spans.pixel(x1, y1);
                 if (x1 == x2 && y1 == y2)
                     break;
                 e2 = error * 2;
@@ -94,6 +137,43 @@ public class Outliner implements Drawer {
                 }
             }
         }
+
+        /**
+         * Returns a drawer onto the same canvas that applies the given
+         * transform before this drawer's own.
+         */
+        public PrimitiveDrawer transform(Transform transform) {
+            return new PrimitiveDrawer(spans, transform.then(this.transform));
+        }
+    }
+
+    /**
+     * Clips a line to the given bounds with the Liang-Barsky algorithm,
+     * returning the visible part as <tt>{x1, y1, x2, y2}</tt>, or null if none
+     * of the line is visible.
+     */
+    static double[] clip(double x1, double y1, double x2, double y2, double minX, double minY, double maxX,
+            double maxY) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double[] p = { -dx, dx, -dy, dy };
+        double[] q = { x1 - minX, maxX - x1, y1 - minY, maxY - y1 };
+        double enter = 0, exit = 1;
+        for (int i = 0; i < 4; ++i) {
+            if (p[i] == 0) {
+                if (q[i] < 0)
+                    return null;
+                continue;
+            }
+            double t = q[i] / p[i];
+            if (p[i] < 0) {
+                enter = Math.max(enter, t);
+            } else {
+                exit = Math.min(exit, t);
+            }
+        }
+        if (enter > exit)
+            return null;
+        return new double[] { x1 + enter * dx, y1 + enter * dy, x1 + exit * dx, y1 + exit * dy };
     }
 
     public static Outliner create(Shape shape) {
@@ -105,4 +185,20 @@ public class Outliner implements Drawer {
             throw new IllegalArgumentException("thickness is too small");
         return new Outliner(shape, thickness);
     }
+
+    /**
+     * Returns the distance from the centre of the given row of a circle to
+     * its last pixel, or -1 if the row is outside the circle.
+     */
+    private static int halfWidth(int radius, int dy) {
+        int limit = radius * radius + radius - dy * dy;
+        if (limit < 0)
+            return -1;
+        int width = (int) Math.sqrt(limit);
+        while (width * width > limit)
+            --width;
+        while ((width + 1) * (width + 1) <= limit)
+            ++width;
+        return width;
+    }
 }
@@ -1,13 +1,14 @@
 package com.fullwall.maps.shapes;
 
+import java.util.Arrays;
 import java.util.List;
 
 import com.fullwall.maps.shapes.Outliner.PrimitiveDrawer;
-import com.fullwall.maps.utils.Point;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
 
 public class Polygon implements Shape {
+    private CoverageMask mask;
     private final int minX, maxX, minY, maxY;
     private final int numVertices;
     private final int[] xVertices;
@@ -16,13 +17,14 @@ public class Polygon implements Shape {
     public Polygon(int[] xVertices, int[] yVertices) {
         if (xVertices.length != yVertices.length)
             throw new IllegalArgumentException("vertice lengths not equal");
-        if (xVertices[-1] != xVertices[0] || yVertices[-1] != yVertices[0])
+        if (xVertices[xVertices.length - 1] != xVertices[0] || yVertices[yVertices.length - 1] != yVertices[0])
             throw new IllegalArgumentException("polygon not closed");
         if (xVertices.length < 4)
             throw new IllegalArgumentException("polygon has less than three sides");
-        this.xVertices = xVertices;
-        this.yVertices = yVertices;
-        int minX = 999, maxX = -999, minY = 999, maxY = -999;
+        // copied, as the arrays key cached masks and must not change.
+        this.xVertices = xVertices.clone();
+        this.yVertices = yVertices.clone();
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
         for (int i = 0; i < xVertices.length; ++i) {
             minX = Math.min(minX, xVertices[i]);
             maxX = Math.max(maxX, xVertices[i]);
@@ -36,18 +38,42 @@ public class Polygon implements Shape {
         this.numVertices = xVertices.length;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Polygon other = (Polygon) obj;
+        return Arrays.equals(xVertices, other.xVertices) && Arrays.equals(yVertices, other.yVertices);
+    }
+
+    @Override
+    public void fill(SpanSink sink) {
+        Scanline.fillPolygon(xVertices, yVertices, sink);
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 + Arrays.hashCode(xVertices)) + Arrays.hashCode(yVertices);
+    }
+
     @Override
     public boolean interescts(int x, int y) {
         if (x < minX || x > maxX || y < minY || y > maxY)
             return false; // don't loop if it's obviously outside.
-        boolean intersects = false;
-        for (int i = 0, j = numVertices - 1; i < numVertices; j = i++) {
-            if ((yVertices[i] > y != yVertices[j] > y)
-                    && (x < (xVertices[j] - xVertices[i]) * (y - yVertices[i])
-                            / (yVertices[j] - yVertices[i]) + xVertices[i]))
-                intersects = !intersects;
+        if (mask != null)
+            return mask.contains(x, y);
+        if (CoverageMask.canMask(this)) {
+            mask = CoverageMask.of(this);
+            return mask.contains(x, y);
         }
-        return intersects;
+        return Scanline.contains(xVertices, yVertices, x, y);
     }
 
     @Override
@@ -61,31 +87,34 @@ public class Polygon implements Shape {
 
     @Override
     public Polygon rotate(double degrees) {
-        Point[] points = new Point[xVertices.length];
-        for (int i = 0; i < points.length; ++i) {
-            Point rotated = ShapeRotations.rotate(degrees, new Point(xVertices[i], yVertices[i]));
-            xVertices[i] = rotated.getX();
-            yVertices[i] = rotated.getY();
+        double radians = Math.toRadians(degrees);
+        double cos = Math.cos(radians), sin = Math.sin(radians);
+        int[] x = new int[numVertices], y = new int[numVertices];
+        for (int i = 0; i < numVertices; ++i) {
+            x[i] = (int) Math.round(xVertices[i] * cos - yVertices[i] * sin);
+            y[i] = (int) Math.round(xVertices[i] * sin + yVertices[i] * cos);
         }
-        return new Polygon(xVertices, yVertices);
+        return new Polygon(x, y);
     }
 
     @Override
     public Polygon scale(double scale) {
-        for (int i = 0; i < xVertices.length; ++i) {
-            xVertices[i] *= scale;
-            yVertices[i] *= scale;
+        int[] x = new int[numVertices], y = new int[numVertices];
+        for (int i = 0; i < numVertices; ++i) {
+            x[i] = (int) (xVertices[i] * scale);
+            y[i] = (int) (yVertices[i] * scale);
         }
-        return new Polygon(xVertices, yVertices);
+        return new Polygon(x, y);
     }
 
     @Override
     public Polygon translate(int x, int y) {
-        for (int i = 0; i < xVertices.length; ++i) {
-            xVertices[i] += x;
-            yVertices[i] += y;
+        int[] xs = new int[numVertices], ys = new int[numVertices];
+        for (int i = 0; i < numVertices; ++i) {
+            xs[i] = xVertices[i] + x;
+            ys[i] = yVertices[i] + y;
         }
-        return new Polygon(xVertices, yVertices);
+        return new Polygon(xs, ys);
     }
 
     public static class PolygonBuilder {
@@ -1,7 +1,6 @@
 package com.fullwall.maps.shapes;
 
 import com.fullwall.maps.shapes.Outliner.PrimitiveDrawer;
-import com.fullwall.maps.utils.Point;
 
 public class Rectangle implements Shape {
     private final int x, y, width, height, maxX, maxY;
@@ -15,9 +14,58 @@ public class Rectangle implements Shape {
         this.maxY = y + height;
     }
 
+    @Override
+    public void fill(SpanSink sink) {
+        for (int row = y; row < maxY; ++row) {
+            sink.span(row, x, maxX);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Rectangle other = (Rectangle) obj;
+        return x == other.x && y == other.y && width == other.width && height == other.height;
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return this;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * (31 + x) + y) + width) + height;
+    }
+
+    /**
+     * Returns whether the given point is one of the pixels the rectangle
+     * fills, from its top-left corner up to but not including its right and
+     * bottom edges. Rectangles are tested directly rather than through a
+     * {@link CoverageMask}, which would be no faster.
+     */
     @Override
     public boolean interescts(int x, int y) {
-        return x > this.x && maxX > x && y > this.y && maxY > y;
+        return x >= this.x && maxX > x && y >= this.y && maxY > y;
     }
 
     @Override
@@ -28,10 +76,13 @@ public class Rectangle implements Shape {
         drawer.drawLine(x + width, y, x, y);
     }
 
+    /**
+     * Returns the rectangle rotated about the origin, which is no longer
+     * axis-aligned, as a {@link TransformedShape}.
+     */
     @Override
-    public Rectangle rotate(double degrees) {
-        Point rotated = ShapeRotations.rotate(degrees, new Point(x, y));
-        return new Rectangle(rotated.getX(), rotated.getY(), width, height);
+    public TransformedShape rotate(double degrees) {
+        return new TransformedShape(this, Transform.rotation(degrees));
     }
 
     @Override
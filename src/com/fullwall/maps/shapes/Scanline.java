@@ -0,0 +1,132 @@
+package com.fullwall.maps.shapes;
+
+/**
+ * A scanline rasteriser for polygons, using an active edge table and integer
+ * arithmetic only. Rows are sampled from the top edge of each pixel: an edge
+ * covers the rows from its upper vertex up to, but not including, its lower
+ * one, and each span runs up to but not including its right-hand crossing, so
+ * polygons that share an edge never overlap. Interiors follow the even-odd
+ * rule.
+ *
+ * @author fullwall
+ */
+public class Scanline {
+    private Scanline() {
+    }
+
+    /**
+     * Returns whether {@link #fillPolygon(int[], int[], SpanSink)} would cover
+     * the given pixel, without rasterising the polygon: the pixel is covered
+     * if an odd number of the edges spanning its row cross the row at or to
+     * the left of it.
+     */
+    public static boolean contains(int[] xVertices, int[] yVertices, int x, int y) {
+        boolean inside = false;
+        for (int i = 0, vertices = xVertices.length; i < vertices; ++i) {
+            int j = i + 1 == vertices ? 0 : i + 1;
+            int x0 = xVertices[i], y0 = yVertices[i], x1 = xVertices[j], y1 = yVertices[j];
+            if (y0 > y1) {
+                int swap = x0;
+                x0 = x1;
+                x1 = swap;
+                swap = y0;
+                y0 = y1;
+                y1 = swap;
+            }
+            if (y < y0 || y >= y1)
+                continue;
+            if (x0 + floorDiv((long) (x1 - x0) * (y - y0), y1 - y0) <= x)
+                inside = !inside;
+        }
+        return inside;
+    }
+
+    /**
+     * Rasterises the polygon with the given vertices. The polygon is closed
+     * implicitly if its last vertex differs from its first.
+     */
+    public static void fillPolygon(int[] xVertices, int[] yVertices, SpanSink sink) {
+        int vertices = xVertices.length;
+        int[] top = new int[vertices], bottom = new int[vertices], x = new int[vertices];
+        int[] step = new int[vertices], remainder = new int[vertices], height = new int[vertices];
+        int[] error = new int[vertices];
+        int edges = 0;
+        for (int i = 0; i < vertices; ++i) {
+            int j = i + 1 == vertices ? 0 : i + 1;
+            int x0 = xVertices[i], y0 = yVertices[i], x1 = xVertices[j], y1 = yVertices[j];
+            if (y0 == y1)
+                continue; // horizontal edges are covered by the rows around them.
+            if (y0 > y1) {
+                int swap = x0;
+                x0 = x1;
+                x1 = swap;
+                swap = y0;
+                y0 = y1;
+                y1 = swap;
+            }
+            // insert in order of upper vertex, so edges become active in order.
+            int at = edges++;
+            while (at > 0 && top[at - 1] > y0) {
+                copyEdge(at - 1, at, top, bottom, x, step, remainder, height);
+                --at;
+            }
+            int dx = x1 - x0, dy = y1 - y0;
+            top[at] = y0;
+            bottom[at] = y1;
+            x[at] = x0;
+            height[at] = dy;
+            step[at] = (int) floorDiv(dx, dy);
+            remainder[at] = dx - step[at] * dy;
+        }
+        if (edges == 0)
+            return;
+        int[] active = new int[edges];
+        int activeCount = 0, next = 0;
+        int maxY = bottom[0];
+        for (int i = 1; i < edges; ++i)
+            maxY = Math.max(maxY, bottom[i]);
+        for (int y = top[0]; y < maxY; ++y) {
+            while (next < edges && top[next] == y)
+                active[activeCount++] = next++;
+            int kept = 0;
+            for (int i = 0; i < activeCount; ++i) {
+                if (bottom[active[i]] > y)
+                    active[kept++] = active[i];
+            }
+            activeCount = kept;
+            // edges rarely cross, so the list stays almost sorted.
+            for (int i = 1; i < activeCount; ++i) {
+                int edge = active[i], at = i;
+                while (at > 0 && x[active[at - 1]] > x[edge]) {
+                    active[at] = active[at - 1];
+                    --at;
+                }
+                active[at] = edge;
+            }
+            for (int i = 0; i + 1 < activeCount; i += 2) {
+                int startX = x[active[i]], endX = x[active[i + 1]];
+                if (startX < endX)
+                    sink.span(y, startX, endX);
+            }
+            for (int i = 0; i < activeCount; ++i) {
+                int edge = active[i];
+                x[edge] += step[edge];
+                error[edge] += remainder[edge];
+                if (error[edge] >= height[edge]) {
+                    ++x[edge];
+                    error[edge] -= height[edge];
+                }
+            }
+        }
+    }
+
+    private static void copyEdge(int from, int to, int[]... fields) {
+        for (int[] field : fields)
+            field[to] = field[from];
+    }
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        return (dividend % divisor != 0 && (dividend < 0) != (divisor < 0)) ? quotient - 1 : quotient;
+    }
+}
@@ -3,10 +3,26 @@ package com.fullwall.maps.shapes;
 import com.fullwall.maps.shapes.Outliner.PrimitiveDrawer;
 
 public interface Shape {
+    /**
+     * Passes every row of the shape's interior to the given sink, as spans.
+     */
+    void fill(SpanSink sink);
+
+    /**
+     * Returns a rectangle containing every point that the shape intersects.
+     */
+    Rectangle getBounds();
+
     boolean interescts(int x, int y);
 
     void outline(PrimitiveDrawer drawer);
 
+    /**
+     * Returns the shape rotated about the origin by the given number of
+     * degrees. Shapes are never modified by transforming them; see
+     * {@link TransformedShape} for transforms that compose without
+     * recomputing the shape.
+     */
     Shape rotate(double degrees);
 
     Shape scale(double scale);
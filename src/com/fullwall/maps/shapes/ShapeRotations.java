@@ -3,16 +3,9 @@ package com.fullwall.maps.shapes;
 import com.fullwall.maps.utils.Point;
 
 public class ShapeRotations {
-    private static double checkedCos(double degrees) {
-        return (Math.toDegrees(Math.cos(Math.toRadians(degrees))));
-    }
-
-    private static double checkedSine(double degrees) {
-        return (Math.toDegrees(Math.sin(Math.toRadians(degrees))));
-    }
-
     public static Point rotate(double degrees, int x, int y) {
-        return rotate(degrees, x, y);
+        double radians = Math.toRadians(degrees);
+        return rotatePoint(Math.cos(radians), Math.sin(radians), x, y);
     }
 
     public static Point[] rotate(double degrees, Point... points) {
@@ -20,22 +13,19 @@ public class ShapeRotations {
     }
 
     public static Point rotate(double degrees, Point point) {
-        return rotatePoint(degrees, point);
+        return rotate(degrees, point.getX(), point.getY());
     }
 
     private static Point[] rotate(double degrees, Point[] points, Point[] source) {
+        double radians = Math.toRadians(degrees);
+        double cos = Math.cos(radians), sin = Math.sin(radians);
         for (int i = 0; i < points.length; ++i) {
-            points[i] = rotatePoint(degrees, source[i]);
+            points[i] = rotatePoint(cos, sin, source[i].getX(), source[i].getY());
         }
         return points;
     }
 
-    private static Point rotatePoint(double degrees, int x, int y) {
-        return new Point((int) (x * checkedCos(degrees) - y * checkedSine(degrees)), (int) (x
-                * checkedSine(degrees) + y * checkedCos(degrees)));
-    }
-
-    private static Point rotatePoint(double degrees, Point point) {
-        return rotatePoint(degrees, point.getX(), point.getY());
+    private static Point rotatePoint(double cos, double sin, int x, int y) {
+        return new Point((int) Math.round(x * cos - y * sin), (int) Math.round(x * sin + y * cos));
     }
 }
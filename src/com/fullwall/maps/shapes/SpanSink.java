@@ -0,0 +1,14 @@
+package com.fullwall.maps.shapes;
+
+/**
+ * Receives the horizontal spans that make up a rasterised shape.
+ *
+ * @author fullwall
+ */
+public interface SpanSink {
+    /**
+     * Receives the span of row <tt>y</tt> from <tt>startX</tt> up to, but not
+     * including, <tt>endX</tt>. Spans are not clipped.
+     */
+    void span(int y, int startX, int endX);
+}
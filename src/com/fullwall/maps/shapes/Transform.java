@@ -0,0 +1,147 @@
+package com.fullwall.maps.shapes;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable 2D affine transform, held as a matrix of 16.16 fixed-point
+ * integers so that transforming points, composing transforms and comparing
+ * them is integer arithmetic only. Rotations are about the origin and in
+ * degrees.
+ *
+ * @author fullwall
+ */
+public class Transform {
+    private final int a, b, c, d, tx, ty;
+
+    private Transform(int a, int b, int c, int d, int tx, int ty) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.tx = tx;
+        this.ty = ty;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        Transform other = (Transform) obj;
+        return a == other.a && b == other.b && c == other.c && d == other.d && tx == other.tx && ty == other.ty;
+    }
+
+    /**
+     * Returns the scale of the transform: the square root of the factor it
+     * scales areas by, which is exact for uniform scalings.
+     */
+    public double getScale() {
+        return Math.sqrt(Math.abs((double) a * d - (double) b * c)) / ONE;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 31 + a;
+        result = 31 * result + b;
+        result = 31 * result + c;
+        result = 31 * result + d;
+        result = 31 * result + tx;
+        return 31 * result + ty;
+    }
+
+    /**
+     * Returns the inverse of this transform.
+     *
+     * @throws IllegalStateException
+     *             if the transform collapses the plane onto a line or point
+     */
+    public Transform inverse() {
+        // computed in floating point and converted once, as a fixed-point
+        // determinant loses most of its precision at small scales.
+        double det = (double) a * d - (double) b * c;
+        if (det == 0)
+            throw new IllegalStateException("transform is not invertible");
+        double scale = (double) ONE * ONE / det;
+        double ia = d * scale, ib = -b * scale, ic = -c * scale, id = a * scale;
+        double itx = -(ia * tx + ib * ty) / ONE, ity = -(ic * tx + id * ty) / ONE;
+        return new Transform((int) Math.round(ia), (int) Math.round(ib), (int) Math.round(ic),
+                (int) Math.round(id), (int) Math.round(itx), (int) Math.round(ity));
+    }
+
+    public boolean isIdentity() {
+        return equals(IDENTITY);
+    }
+
+    /**
+     * Returns the transform that applies this transform, then the given one.
+     */
+    public Transform then(Transform next) {
+        return new Transform((int) round((long) next.a * a + (long) next.b * c), (int) round((long) next.a * b
+                + (long) next.b * d), (int) round((long) next.c * a + (long) next.d * c), (int) round((long) next.c
+                * b + (long) next.d * d), (int) (round((long) next.a * tx + (long) next.b * ty) + next.tx),
+                (int) (round((long) next.c * tx + (long) next.d * ty) + next.ty));
+    }
+
+    /**
+     * Transforms a 16.16 fixed-point x coordinate.
+     */
+    long transformFixedX(long x, long y) {
+        return ((a * x + b * y) >> SHIFT) + tx;
+    }
+
+    /**
+     * Transforms a 16.16 fixed-point y coordinate.
+     */
+    long transformFixedY(long x, long y) {
+        return ((c * x + d * y) >> SHIFT) + ty;
+    }
+
+    /**
+     * Returns the x coordinate of the given point after the transform,
+     * rounded to the nearest integer.
+     */
+    public int transformX(int x, int y) {
+        return (int) ((transformFixedX((long) x << SHIFT, (long) y << SHIFT) + HALF) >> SHIFT);
+    }
+
+    /**
+     * Returns the y coordinate of the given point after the transform,
+     * rounded to the nearest integer.
+     */
+    public int transformY(int x, int y) {
+        return (int) ((transformFixedY((long) x << SHIFT, (long) y << SHIFT) + HALF) >> SHIFT);
+    }
+
+    static final int SHIFT = 16;
+
+    private static final int ONE = 1 << SHIFT, HALF = ONE >> 1;
+
+    public static final Transform IDENTITY = new Transform(ONE, 0, 0, ONE, 0, 0);
+
+    private static long round(long product) {
+        return (product + HALF) >> SHIFT;
+    }
+
+    /**
+     * Returns a rotation about the origin by the given number of degrees.
+     */
+    public static Transform rotation(double degrees) {
+        double radians = Math.toRadians(degrees);
+        int cos = (int) Math.round(Math.cos(radians) * ONE), sin = (int) Math.round(Math.sin(radians) * ONE);
+        return new Transform(cos, -sin, sin, cos, 0, 0);
+    }
+
+    /**
+     * Returns a uniform scaling about the origin.
+     */
+    public static Transform scaling(double scale) {
+        int fixed = (int) Math.round(scale * ONE);
+        Preconditions.checkArgument(fixed != 0, "scale is too small");
+        return new Transform(fixed, 0, 0, fixed, 0, 0);
+    }
+
+    public static Transform translation(int x, int y) {
+        return new Transform(ONE, 0, 0, ONE, x << SHIFT, y << SHIFT);
+    }
+}
@@ -0,0 +1,171 @@
+package com.fullwall.maps.shapes;
+
+import com.fullwall.maps.shapes.Outliner.PrimitiveDrawer;
+import com.google.common.base.Preconditions;
+
+/**
+ * A shape drawn through an affine {@link Transform}. Transforming a
+ * transformed shape composes the transforms instead of nesting shapes, and
+ * the base shape is never modified.
+ *
+ * The shape is rasterised by sampling the base shape at the centre of every
+ * pixel covered, mapped back through the inverse transform, so transformed
+ * shapes have no gaps. Fills and hit tests go through a {@link CoverageMask},
+ * which is shared between equal shapes under equal transforms, so a shape is
+ * only rasterised once per distinct transform. Shapes too large to mask are
+ * sampled on every fill and hit test instead.
+ *
+ * @author fullwall
+ */
+public class TransformedShape implements Shape {
+    private final Shape base;
+    private Rectangle bounds;
+    private final Transform inverse;
+    private CoverageMask mask;
+    private final Transform transform;
+
+    /**
+     * @throws IllegalStateException
+     *             if the transform is not invertible
+     */
+    public TransformedShape(Shape base, Transform transform) {
+        Preconditions.checkNotNull(base, "base can't be null");
+        Preconditions.checkNotNull(transform, "transform can't be null");
+        if (base instanceof TransformedShape) {
+            transform = ((TransformedShape) base).transform.then(transform);
+            base = ((TransformedShape) base).base;
+        }
+        this.base = base;
+        this.transform = transform;
+        this.inverse = transform.inverse();
+    }
+
+    private CoverageMask baseMask() {
+        return CoverageMask.canMask(base) ? CoverageMask.of(base) : null;
+    }
+
+    private boolean covers(CoverageMask baseMask, int x, int y) {
+        return baseMask != null ? baseMask.contains(x, y) : base.interescts(x, y);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        TransformedShape other = (TransformedShape) obj;
+        return base.equals(other.base) && transform.equals(other.transform);
+    }
+
+    @Override
+    public void fill(SpanSink sink) {
+        if (CoverageMask.canMask(this)) {
+            CoverageMask.of(this).fill(sink);
+        } else {
+            sample(sink);
+        }
+    }
+
+    public Shape getBase() {
+        return base;
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        if (bounds != null)
+            return bounds;
+        Rectangle base = this.base.getBounds();
+        int shift = Transform.SHIFT;
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (int corner = 0; corner < 4; ++corner) {
+            long x = (long) (base.getX() + ((corner & 1) == 0 ? 0 : base.getWidth())) << shift;
+            long y = (long) (base.getY() + ((corner & 2) == 0 ? 0 : base.getHeight())) << shift;
+            long tx = transform.transformFixedX(x, y), ty = transform.transformFixedY(x, y);
+            minX = Math.min(minX, tx);
+            maxX = Math.max(maxX, tx);
+            minY = Math.min(minY, ty);
+            maxY = Math.max(maxY, ty);
+        }
+        int left = (int) (minX >> shift), top = (int) (minY >> shift);
+        long one = 1L << shift;
+        int right = (int) ((maxX + one - 1) >> shift), bottom = (int) ((maxY + one - 1) >> shift);
+        return bounds = new Rectangle(left, top, right - left, bottom - top);
+    }
+
+    public Transform getTransform() {
+        return transform;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 + base.hashCode()) + transform.hashCode();
+    }
+
+    @Override
+    public boolean interescts(int x, int y) {
+        if (mask == null) {
+            if (!CoverageMask.canMask(this)) {
+                // sample the pixel centre exactly as sample() does.
+                long centreX = ((long) x << Transform.SHIFT) + HALF, centreY = ((long) y << Transform.SHIFT) + HALF;
+                return covers(baseMask(), (int) (inverse.transformFixedX(centreX, centreY) >> Transform.SHIFT),
+                        (int) (inverse.transformFixedY(centreX, centreY) >> Transform.SHIFT));
+            }
+            mask = CoverageMask.of(this);
+        }
+        return mask.contains(x, y);
+    }
+
+    @Override
+    public void outline(PrimitiveDrawer drawer) {
+        base.outline(drawer.transform(transform));
+    }
+
+    @Override
+    public TransformedShape rotate(double degrees) {
+        return new TransformedShape(base, transform.then(Transform.rotation(degrees)));
+    }
+
+    /**
+     * Passes the pixels whose centres map into the base shape to the given
+     * sink, as spans. Used to rasterise masks, and to fill shapes too large to
+     * mask.
+     */
+    void sample(SpanSink sink) {
+        Rectangle bounds = getBounds();
+        CoverageMask baseMask = baseMask();
+        int shift = Transform.SHIFT;
+        // step along each row in fixed point, from the centre of each pixel.
+        long stepX = inverse.transformFixedX(1L << shift, 0) - inverse.transformFixedX(0, 0);
+        long stepY = inverse.transformFixedY(1L << shift, 0) - inverse.transformFixedY(0, 0);
+        for (int y = bounds.getY(), endY = y + bounds.getHeight(); y < endY; ++y) {
+            long centreX = ((long) bounds.getX() << shift) + HALF, centreY = ((long) y << shift) + HALF;
+            long baseX = inverse.transformFixedX(centreX, centreY), baseY = inverse.transformFixedY(centreX,
+                    centreY);
+            int start = -1;
+            for (int x = bounds.getX(), endX = x + bounds.getWidth(); x <= endX; ++x) {
+                boolean covered = x < endX && covers(baseMask, (int) (baseX >> shift), (int) (baseY >> shift));
+                if (covered && start == -1) {
+                    start = x;
+                } else if (!covered && start != -1) {
+                    sink.span(y, start, x);
+                    start = -1;
+                }
+                baseX += stepX;
+                baseY += stepY;
+            }
+        }
+    }
+
+    @Override
+    public TransformedShape scale(double scale) {
+        return new TransformedShape(base, transform.then(Transform.scaling(scale)));
+    }
+
+    @Override
+    public TransformedShape translate(int x, int y) {
+        return new TransformedShape(base, transform.then(Transform.translation(x, y)));
+    }
+
+    private static final long HALF = 1L << Transform.SHIFT - 1;
+}
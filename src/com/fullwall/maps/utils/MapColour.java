@@ -34,13 +34,20 @@ public enum MapColour {
     }
 
     public static String strip(String other) {
-        String stripped = other;
-        while (stripped.indexOf('\u00A7') != -1) {
-            int idx = stripped.indexOf('\u00A7');
-            int colon = stripped.indexOf(';', idx);
-            stripped = stripped.substring(0, idx) + stripped.substring(colon + 1, stripped.length());
+        int idx = other.indexOf('\u00A7');
+        if (idx == -1)
+            return other;
+        StringBuilder stripped = new StringBuilder(other.length());
+        int start = 0;
+        while (idx != -1) {
+            int colon = other.indexOf(';', idx);
+            if (colon == -1)
+                break;
+            stripped.append(other, start, idx);
+            start = colon + 1;
+            idx = other.indexOf('\u00A7', start);
         }
-        return stripped;
+        return stripped.append(other, start, other.length()).toString();
     }
 
 }
\ No newline at end of file
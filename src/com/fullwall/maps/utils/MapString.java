@@ -2,17 +2,20 @@ package com.fullwall.maps.utils;
 
 import org.bukkit.map.MapFont;
 
+import com.fullwall.maps.graphics.Glyphs;
+import com.fullwall.maps.graphics.TextLayout;
 import com.fullwall.maps.os.Constants;
 
 public class MapString {
     private final MapFont font;
+    private TextLayout layout;
     private final String string;
     private final int width;
 
     public MapString(MapFont font, String string) {
         this.font = font;
         this.string = string.replaceAll("\t", "    ");
-        this.width = font.getWidth(MapColour.strip(string));
+        this.width = Glyphs.of(font).measure(this.string);
     }
 
     public MapString(String string) {
@@ -47,6 +50,12 @@ public class MapString {
         return this.font.getHeight();
     }
 
+    private TextLayout getLayout() {
+        if (layout == null)
+            layout = new TextLayout(font, string);
+        return layout;
+    }
+
     public int getWidth() {
         return width;
     }
@@ -57,10 +66,8 @@ public class MapString {
     }
 
     public MapString truncate(int targetWidth) {
-        String process = string;
-        while (process.length() > 0 && font.getWidth(MapColour.strip(process)) > targetWidth) {
-            process = process.substring(0, process.length() - 1);
-        }
-        return create(process);
+        if (width <= targetWidth)
+            return this;
+        return create(getLayout().truncate(targetWidth).toString());
     }
 }
\ No newline at end of file
@@ -23,6 +23,13 @@ public class Messaging {
         Bukkit.getLogger().log(level, "[Citizens] " + SPACE.join(msg));
     }
 
+    /**
+     * Logs a message along with the stack trace of the given exception.
+     */
+    public static void log(Level level, String msg, Throwable ex) {
+        Bukkit.getLogger().log(level, "[Citizens] " + msg, ex);
+    }
+
     public static void log(Object... msg) {
         log(Level.INFO, msg);
     }
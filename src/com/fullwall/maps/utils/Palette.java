@@ -0,0 +1,347 @@
+package com.fullwall.maps.utils;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import org.bukkit.map.MapPalette;
+
+import com.fullwall.maps.os.Workers;
+import com.google.common.io.Closeables;
+
+/**
+ * Converts images to map colours using a lookup table of every colour,
+ * quantised to 6 bits per channel, instead of searching the palette for the
+ * nearest colour of every pixel like {@link MapPalette#imageToBytes(Image)}.
+ * The table is built once with the server's colour metric and cached on disk.
+ * It is loaded in the background when the plugin is enabled; until it is
+ * ready, conversions search the palette directly, as the server does.
+ *
+ * Large images are converted in parallel bands of rows, unless they are
+ * dithered with {@link Dither#FloydSteinberg}, which spreads error from row to
+ * row and has to run sequentially.
+ *
+ * @author fullwall
+ */
+public class Palette {
+    private Palette() {
+    }
+
+    private static int colourCount;
+    private static volatile int[] colours;
+    private static final File CACHE = new File("plugins/MapOS/palette.dat");
+    private static final int CACHE_VERSION = 2, BAND_HEIGHT = 32, TABLE_SIZE = 1 << 18;
+    private static final int[] ORDERED = { 0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1, 9, 15, 7, 13, 5 };
+    private static volatile byte[] table;
+    private static boolean tableLoading;
+
+    private static int clamp(int channel) {
+        return channel < 0 ? 0 : channel > 255 ? 255 : channel;
+    }
+
+    /**
+     * Converts an image to map colours, without dithering.
+     */
+    public static byte[] convert(Image image) {
+        return convert(image, Dither.None);
+    }
+
+    /**
+     * Converts an image to map colours, row by row. Pixels that are more than
+     * half transparent become {@link MapPalette#TRANSPARENT}.
+     */
+    public static byte[] convert(Image image, Dither dither) {
+        BufferedImage buffered = toBuffered(image);
+        int width = buffered.getWidth(), height = buffered.getHeight();
+        int[] argb = buffered.getRGB(0, 0, width, height, null, 0, width);
+        byte[] result = new byte[width * height];
+        byte[] table = getTable();
+        if (dither == Dither.FloydSteinberg) {
+            diffuse(table, argb, result, width, height);
+        } else if (height <= BAND_HEIGHT) {
+            convertRows(table, argb, result, width, 0, height, dither == Dither.Ordered);
+        } else {
+            Workers.get().invoke(new Band(table, argb, result, width, 0, height, dither == Dither.Ordered));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the closest map colour to the given colour, from the lookup
+     * table if it is ready.
+     */
+    private static byte colour(byte[] table, int r, int g, int b) {
+        return table != null ? table[index(r, g, b)] : nearest(r, g, b);
+    }
+
+    private static void convertRows(byte[] table, int[] argb, byte[] result, int width, int startY, int endY,
+            boolean ordered) {
+        for (int y = startY; y < endY; ++y) {
+            for (int x = 0, i = y * width; x < width; ++x, ++i) {
+                int pixel = argb[i];
+                if (pixel >>> 24 < 128) {
+                    result[i] = MapPalette.TRANSPARENT;
+                    continue;
+                }
+                if (!ordered) {
+                    result[i] = colour(table, pixel >> 16 & 0xFF, pixel >> 8 & 0xFF, pixel & 0xFF);
+                    continue;
+                }
+                // spread thresholds of -16 to 14 over each 4x4 block.
+                int offset = (ORDERED[(y & 3) << 2 | x & 3] << 1) - 16;
+                result[i] = colour(table, clamp((pixel >> 16 & 0xFF) + offset), clamp((pixel >> 8 & 0xFF) + offset),
+                        clamp((pixel & 0xFF) + offset));
+            }
+        }
+    }
+
+    private static byte[] createTable() {
+        byte[] table = new byte[TABLE_SIZE];
+        for (int r = 0; r < 64; ++r) {
+            for (int g = 0; g < 64; ++g) {
+                for (int b = 0; b < 64; ++b) {
+                    // match the centre of each quantised cell.
+                    table[r << 12 | g << 6 | b] = nearest(r << 2 | 2, g << 2 | 2, b << 2 | 2);
+                }
+            }
+        }
+        return table;
+    }
+
+    private static void diffuse(byte[] table, int[] argb, byte[] result, int width, int height) {
+        int[] colours = getColours();
+        int[] current = new int[(width + 2) * 3], next = new int[(width + 2) * 3];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0, i = y * width; x < width; ++x, ++i) {
+                int pixel = argb[i];
+                if (pixel >>> 24 < 128) {
+                    result[i] = MapPalette.TRANSPARENT;
+                    continue;
+                }
+                int e = (x + 1) * 3;
+                int r = clamp((pixel >> 16 & 0xFF) + (current[e] >> 4));
+                int g = clamp((pixel >> 8 & 0xFF) + (current[e + 1] >> 4));
+                int b = clamp((pixel & 0xFF) + (current[e + 2] >> 4));
+                byte colour = colour(table, r, g, b);
+                result[i] = colour;
+                int matched = colours[colour & 0xFF];
+                spread(current, next, e, r - (matched >> 16 & 0xFF));
+                spread(current, next, e + 1, g - (matched >> 8 & 0xFF));
+                spread(current, next, e + 2, b - (matched & 0xFF));
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+    }
+
+    private static int[] getColours() {
+        int[] found = colours;
+        return found != null ? found : loadColours();
+    }
+
+    /**
+     * Returns the lookup table, or null if it isn't ready yet, in which case
+     * it starts loading.
+     */
+    private static byte[] getTable() {
+        byte[] loaded = table;
+        if (loaded == null)
+            load();
+        return loaded;
+    }
+
+    private static int index(int r, int g, int b) {
+        return (r >> 2) << 12 | (g >> 2) << 6 | b >> 2;
+    }
+
+    /**
+     * Starts loading the lookup table in the background, building and
+     * caching it first if the cached copy is missing or was built for a
+     * different palette. Does nothing if the table is loaded or loading.
+     */
+    public static synchronized void load() {
+        if (table != null || tableLoading)
+            return;
+        tableLoading = true;
+        Workers.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int hash = Arrays.hashCode(getColours());
+                    byte[] loaded = read(hash);
+                    if (loaded == null) {
+                        loaded = createTable();
+                        write(hash, loaded);
+                    }
+                    table = loaded;
+                } finally {
+                    synchronized (Palette.class) {
+                        tableLoading = false;
+                    }
+                }
+            }
+        });
+    }
+
+    private static synchronized int[] loadColours() {
+        if (colours != null)
+            return colours;
+        int[] found = new int[256];
+        int count = 0;
+        for (; count < found.length; ++count) {
+            try {
+                found[count] = MapPalette.getColor((byte) count).getRGB();
+            } catch (IndexOutOfBoundsException ex) {
+                break;
+            }
+        }
+        colourCount = count;
+        return colours = found;
+    }
+
+    /**
+     * Returns the map colour closest to the given RGB colour.
+     */
+    public static byte match(int r, int g, int b) {
+        return colour(getTable(), clamp(r), clamp(g), clamp(b));
+    }
+
+    /**
+     * Searches the palette for the colour closest to the given colour, using
+     * the same weighted distance as {@link MapPalette#matchColor(int, int, int)}
+     * without allocating.
+     */
+    private static byte nearest(int r, int g, int b) {
+        int[] colours = getColours();
+        int best = 0;
+        double bestDistance = -1;
+        // the first four colours are transparent.
+        for (int i = 4; i < colourCount; ++i) {
+            int colour = colours[i];
+            int cr = colour >> 16 & 0xFF, cg = colour >> 8 & 0xFF, cb = colour & 0xFF;
+            double mean = (r + cr) / 2D;
+            int dr = r - cr, dg = g - cg, db = b - cb;
+            double distance = (2 + mean / 256) * dr * dr + 4 * dg * dg + (2 + (255 - mean) / 256) * db * db;
+            if (bestDistance == -1 || distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return (byte) best;
+    }
+
+    private static byte[] read(int hash) {
+        if (!CACHE.exists())
+            return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(CACHE)));
+            if (in.readInt() != CACHE_VERSION || in.readInt() != hash)
+                return null;
+            byte[] loaded = new byte[TABLE_SIZE];
+            in.readFully(loaded);
+            return loaded;
+        } catch (IOException ex) {
+            Messaging.log("Unable to read the palette cache, rebuilding.");
+            return null;
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Spreads the error of one channel to the neighbouring pixels, in
+     * sixteenths.
+     */
+    private static void spread(int[] current, int[] next, int index, int error) {
+        current[index + 3] += error * 7;
+        next[index - 3] += error * 3;
+        next[index] += error * 5;
+        next[index + 3] += error;
+    }
+
+    private static BufferedImage toBuffered(Image image) {
+        if (image instanceof BufferedImage)
+            return (BufferedImage) image;
+        BufferedImage buffered = new BufferedImage(image.getWidth(null), image.getHeight(null),
+                BufferedImage.TYPE_INT_ARGB);
+        buffered.getGraphics().drawImage(image, 0, 0, null);
+        return buffered;
+    }
+
+    private static void write(int hash, byte[] table) {
+        Files.createFile(CACHE);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(CACHE)));
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(hash);
+            out.write(table);
+        } catch (IOException ex) {
+            Messaging.log("Unable to write the palette cache.");
+        } finally {
+            Closeables.closeQuietly(out);
+        }
+    }
+
+    private static class Band extends RecursiveAction {
+        private final int[] argb;
+        private final int endY;
+        private final boolean ordered;
+        private final byte[] result;
+        private final int startY;
+        private final byte[] table;
+        private final int width;
+
+        private Band(byte[] table, int[] argb, byte[] result, int width, int startY, int endY, boolean ordered) {
+            this.table = table;
+            this.argb = argb;
+            this.result = result;
+            this.width = width;
+            this.startY = startY;
+            this.endY = endY;
+            this.ordered = ordered;
+        }
+
+        @Override
+        protected void compute() {
+            if (endY - startY <= BAND_HEIGHT) {
+                convertRows(table, argb, result, width, startY, endY, ordered);
+                return;
+            }
+            int middle = (startY + endY) >>> 1;
+            invokeAll(new Band(table, argb, result, width, startY, middle, ordered), new Band(table, argb,
+                    result, width, middle, endY, ordered));
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    public enum Dither {
+        /**
+         * Error diffusion, which gives the smoothest gradients. Converted
+         * sequentially.
+         */
+        FloydSteinberg,
+        /**
+         * No dithering; each pixel gets its closest colour.
+         */
+        None,
+        /**
+         * A 4x4 Bayer pattern, which is cheaper than error diffusion and
+         * stable between frames.
+         */
+        Ordered;
+    }
+}